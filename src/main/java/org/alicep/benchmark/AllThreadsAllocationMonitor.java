@@ -0,0 +1,101 @@
+package org.alicep.benchmark;
+
+import static com.google.common.base.Preconditions.checkState;
+import static org.alicep.benchmark.ThreadAllocationMonitor.READ_OVERHEAD_BYTES;
+import static org.alicep.benchmark.ThreadAllocationMonitor.currentThreadAllocatedBytes;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sums the allocation counters of every live thread, so allocations made by any thread are counted, as when watching
+ * Eden, but to the byte, and without depending on the garbage collector.
+ *
+ * <p>The bookkeeping done while sampling is bracketed by reads of the sampling thread's own counter, and left out of
+ * the next sample. A thread's counter cannot be read once it exits, so any sample spanning a thread exiting is
+ * reported as -1. Once threads have exited during two samples, the monitor watches Eden from then on where it can.
+ */
+class AllThreadsAllocationMonitor implements AllocationMonitor {
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private final Thread thread;
+  private Map<Long, Long> lastAllocated = new HashMap<>();
+  private long lastStartedThreads;
+  private long lastThreadAllocated;
+  private int samplesWithThreadsExiting;
+  private AllocationMonitor fallback;
+
+  AllThreadsAllocationMonitor() {
+    checkState(ThreadAllocationMonitor.isAvailable(), "Per-thread allocation counters not supported by this JVM");
+    this.thread = Thread.currentThread();
+    lastStartedThreads = THREADS.getTotalStartedThreadCount();
+    sample();
+    samplesWithThreadsExiting = 0;
+  }
+
+  /**
+   * Returns the memory allocated by all threads since construction, or the last call to {@link #sample()}, or -1 if
+   * a thread exited in that time.
+   *
+   * <p>Must be called from the thread that created the monitor.
+   */
+  @Override
+  public long sample() {
+    if (Thread.currentThread() != thread) {
+      throw new IllegalStateException("Must be sampled from " + thread.getName());
+    }
+    if (fallback != null) {
+      try {
+        return fallback.sample();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return -1;
+      }
+    }
+    long threadAllocated = currentThreadAllocatedBytes();
+    long startedThreads = THREADS.getTotalStartedThreadCount();
+    long[] ids = THREADS.getAllThreadIds();
+    long[] allocated = ThreadAllocationMonitor.threadAllocatedBytes(ids);
+    long total = threadAllocated - lastThreadAllocated - READ_OVERHEAD_BYTES;
+    Map<Long, Long> nextAllocated = new HashMap<>();
+    int newThreads = 0;
+    for (int i = 0; i < ids.length; ++i) {
+      if (ids[i] != thread.getId() && allocated[i] >= 0) {
+        Long last = lastAllocated.get(ids[i]);
+        if (last == null) {
+          newThreads++;
+        }
+        total += allocated[i] - ((last == null) ? 0 : last);
+        nextAllocated.put(ids[i], allocated[i]);
+      }
+    }
+    boolean threadsExited = !nextAllocated.keySet().containsAll(lastAllocated.keySet())
+        || startedThreads - lastStartedThreads > newThreads;
+    lastAllocated = nextAllocated;
+    lastStartedThreads = startedThreads;
+    if (threadsExited && ++samplesWithThreadsExiting >= 2 && EdenMonitor.isAvailable()) {
+      try {
+        fallback = EdenMonitor.create();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    lastThreadAllocated = currentThreadAllocatedBytes();
+    return threadsExited ? -1 : total;
+  }
+
+  @Override
+  public int samplingRepeats() {
+    return (fallback == null) ? 1 : fallback.samplingRepeats();
+  }
+
+  @Override
+  public void close() {
+    if (fallback != null) {
+      fallback.close();
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package org.alicep.benchmark;
+
+import java.io.Closeable;
+
+/**
+ * Measures memory allocated between successive calls to {@link #sample()}.
+ */
+interface AllocationMonitor extends Closeable {
+
+  /**
+   * Returns whether {@link #forCurrentThread()} is supported by this JVM.
+   */
+  static boolean isAvailable() {
+    return ThreadAllocationMonitor.isPrecise() || EdenMonitor.isAvailable();
+  }
+
+  /**
+   * Returns a monitor for allocations made by the current thread.
+   *
+   * <p>Prefers per-thread counters, falling back to watching Eden, which also sees any other threads allocating and
+   * is only accurate to within {@link EdenMonitor#SAMPLE_ERROR_BYTES}.
+   */
+  static AllocationMonitor forCurrentThread() throws InterruptedException {
+    if (ThreadAllocationMonitor.isPrecise()) {
+      return new ThreadAllocationMonitor();
+    }
+    return EdenMonitor.create();
+  }
+
+  /**
+   * Returns a monitor for allocations made by any thread.
+   *
+   * <p>Prefers summing per-thread counters, falling back to watching Eden, then to {@link #forCurrentThread()} on JVMs
+   * where neither is possible.
+   */
+  static AllocationMonitor forAllThreads() throws InterruptedException {
+    if (ThreadAllocationMonitor.isPrecise()) {
+      return new AllThreadsAllocationMonitor();
+    }
+    if (EdenMonitor.isAvailable()) {
+      return EdenMonitor.create();
+    }
+    return forCurrentThread();
+  }
+
+  /**
+   * Returns how many times to repeat a command per sample to measure its allocations to the byte with a monitor
+   * returned by {@link #forAllThreads()}.
+   */
+  static int repeatsPerSampleForAllThreads() {
+    if (ThreadAllocationMonitor.isPrecise()) {
+      return 1;
+    }
+    if (EdenMonitor.isAvailable()) {
+      return EdenMonitor.SAMPLE_ERROR_BYTES / Long.BYTES;
+    }
+    return repeatsPerSample();
+  }
+
+  /**
+   * Returns how many times to repeat a command per sample to measure its allocations to the byte with a monitor
+   * returned by {@link #forCurrentThread()}.
+   *
+   * <p>Java rounds all allocations to a multiple of {@link Long#BYTES}, so a monitor accurate to within N bytes needs
+   * N / {@code Long.BYTES} repeats.
+   */
+  static int repeatsPerSample() {
+    if (ThreadAllocationMonitor.isPrecise()) {
+      return 1;
+    }
+    return EdenMonitor.SAMPLE_ERROR_BYTES / Long.BYTES;
+  }
+
+  /**
+   * Returns how many times to repeat a command per sample to measure its allocations to the byte with this monitor.
+   * May change between samples.
+   */
+  default int samplingRepeats() {
+    return 1;
+  }
+
+  /**
+   * Returns the amount of memory allocated since construction, or the last call to {@link #sample()}.
+   */
+  long sample() throws InterruptedException;
+
+  @Override
+  void close();
+}
@@ -0,0 +1,150 @@
+package org.alicep.benchmark;
+
+import static org.alicep.benchmark.ThreadAllocationMonitor.READ_OVERHEAD_BYTES;
+import static org.alicep.benchmark.ThreadAllocationMonitor.currentThreadAllocatedBytes;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wraps an {@link Executor}, totalling the memory allocated by each task on whichever thread runs it.
+ *
+ * <p>Tasks may themselves submit further work to this executor; it will be tracked too. Allocations made by the
+ * underlying executor on the submitting thread (e.g. queue nodes) are left for that thread's own monitor to count.
+ */
+class AllocationTrackingExecutor implements Executor {
+
+  /**
+   * Bytes allocated wrapping a submitted task, which are not the task's responsibility.
+   */
+  private static final long WRAPPER_BYTES = calibrateWrapperBytes();
+
+  /**
+   * How many tracked regions are open on each thread, so tasks run synchronously inside one are not counted twice.
+   */
+  private static final ThreadLocal<int[]> NESTING = ThreadLocal.withInitial(() -> new int[1]);
+
+  /**
+   * Used to prevent HotSpot optimizing away unused objects. Volatile just to be certain.
+   */
+  @SuppressWarnings("unused")
+  private static volatile Object sink;
+
+  private final Executor delegate;
+  private final AtomicLong allocated = new AtomicLong();
+  private final AtomicInteger pending = new AtomicInteger();
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  private volatile Thread waiter;
+
+  AllocationTrackingExecutor(Executor delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    TrackedTask task = new TrackedTask(this, command);
+    allocated.addAndGet(-WRAPPER_BYTES);
+    pending.incrementAndGet();
+    try {
+      delegate.execute(task);
+    } catch (RuntimeException | Error e) {
+      pending.decrementAndGet();
+      throw e;
+    }
+  }
+
+  /**
+   * Marks the current thread as already being measured, until a matching {@link #exitTrackedRegion()}.
+   */
+  static void enterTrackedRegion() {
+    NESTING.get()[0]++;
+  }
+
+  static void exitTrackedRegion() {
+    NESTING.get()[0]--;
+  }
+
+  /**
+   * Returns the total memory allocated by completed tasks.
+   */
+  long allocatedBytes() {
+    return allocated.get();
+  }
+
+  /**
+   * Waits, without allocating, until every submitted task (and any work they submitted) has completed.
+   *
+   * @throws Throwable the first exception thrown by a task since the last call
+   */
+  void awaitQuiescence() throws Throwable {
+    // Tasks read waiter after decrementing pending, so one of us always sees the other's write
+    waiter = Thread.currentThread();
+    try {
+      while (pending.get() != 0) {
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+        LockSupport.park(this);
+      }
+    } finally {
+      waiter = null;
+    }
+    Throwable t = failure.getAndSet(null);
+    if (t != null) {
+      throw t;
+    }
+  }
+
+  private static class TrackedTask implements Runnable {
+
+    private final AllocationTrackingExecutor owner;
+    private final Runnable command;
+
+    TrackedTask(AllocationTrackingExecutor owner, Runnable command) {
+      this.owner = owner;
+      this.command = command;
+    }
+
+    @Override
+    public void run() {
+      int[] nesting = NESTING.get();
+      boolean outermost = (nesting[0]++ == 0);
+      long before = outermost ? currentThreadAllocatedBytes() : 0;
+      try {
+        command.run();
+      } catch (Throwable t) {
+        owner.failure.compareAndSet(null, t);
+      } finally {
+        if (outermost) {
+          long after = currentThreadAllocatedBytes();
+          owner.allocated.addAndGet(after - before - READ_OVERHEAD_BYTES);
+        }
+        nesting[0]--;
+        if (owner.pending.decrementAndGet() == 0) {
+          Thread waiter = owner.waiter;
+          if (waiter != null) {
+            LockSupport.unpark(waiter);
+          }
+        }
+      }
+    }
+  }
+
+  private static long calibrateWrapperBytes() {
+    if (!ThreadAllocationMonitor.isAvailable()) {
+      return 0;
+    }
+    long wrapperBytes = Long.MAX_VALUE;
+    for (int i = 0; i < 16; ++i) {
+      long before = currentThreadAllocatedBytes();
+      sink = new TrackedTask(null, null);
+      long after = currentThreadAllocatedBytes();
+      wrapperBytes = Math.min(wrapperBytes, after - before - READ_OVERHEAD_BYTES);
+    }
+    sink = null;
+    return wrapperBytes;
+  }
+}
@@ -0,0 +1,11 @@
+package org.alicep.benchmark;
+
+/**
+ * A benchmark that does nothing, timed by the runner to measure the cost of its own hot loop.
+ *
+ * <p>Public only so generated hot loops, loaded through their own class-loaders, can call it.
+ */
+public class Baseline {
+
+  public void nothing() { }
+}
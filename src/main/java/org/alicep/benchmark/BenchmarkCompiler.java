@@ -1,29 +1,111 @@
 package org.alicep.benchmark;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.reflect.Modifier.isPublic;
 import static java.lang.reflect.Modifier.isStatic;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
 
+import java.io.IOException;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
 import java.util.function.LongUnaryOperator;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import javax.tools.DiagnosticListener;
 import javax.tools.JavaCompiler.CompilationTask;
 import javax.tools.JavaFileObject;
 import javax.tools.JavaFileObject.Kind;
 import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardLocation;
 import javax.tools.ToolProvider;
 
+import org.alicep.benchmark.BenchmarkRunner.HotLoop;
+
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
 class BenchmarkCompiler {
 
-  private static final AtomicInteger count = new AtomicInteger();
+  /**
+   * Statements padding a method past the JIT's largest inlining size for hot methods ({@code -XX:FreqInlineSize},
+   * 325 bytes of bytecode by default), at four bytes each.
+   */
+  private static final int DONT_INLINE_PADDING = 100;
+
+  /**
+   * How a generated hot loop calls the benchmark method.
+   */
+  static final class HotLoopOptions {
+
+    static final HotLoopOptions DEFAULT = new HotLoopOptions(1, false, true);
+
+    static HotLoopOptions of(HotLoop annotation) {
+      if (annotation == null) {
+        return DEFAULT;
+      }
+      checkArgument(annotation.unroll() > 0, "@HotLoop unroll must be positive, not %s", annotation.unroll());
+      return new HotLoopOptions(annotation.unroll(), annotation.barrier(), annotation.inline());
+    }
+
+    final int unroll;
+    final boolean barrier;
+    final boolean inline;
+
+    private HotLoopOptions(int unroll, boolean barrier, boolean inline) {
+      this.unroll = unroll;
+      this.barrier = barrier;
+      this.inline = inline;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof HotLoopOptions)) {
+        return false;
+      }
+      HotLoopOptions other = (HotLoopOptions) obj;
+      return unroll == other.unroll && barrier == other.barrier && inline == other.inline;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(unroll, barrier, inline);
+    }
+
+    @Override
+    public String toString() {
+      List<String> options = new ArrayList<>();
+      if (unroll > 1) {
+        options.add("unrolled " + unroll + "x");
+      }
+      if (barrier) {
+        options.add("with a barrier");
+      }
+      if (!inline) {
+        options.add("not inlined");
+      }
+      return options.isEmpty() ? "default" : String.join(", ", options);
+    }
+  }
 
   /**
    * Returns an object that wraps a benchmark method and invokes it in a loop.
@@ -58,42 +140,312 @@ class BenchmarkCompiler {
       int index,
       boolean forkingClasses,
       Predicate<Class<?>>... forkingCoreClassesMatching) {
-    checkArgument(cls.isAssignableFrom(method.getDeclaringClass()));
-    String pkg = method.getDeclaringClass().getPackage().getName();
-    if (pkg.startsWith("java.")) {
-      pkg = "looper." + pkg;
-    }
-    String className = "Benchmark_" + count.incrementAndGet();
-
-    String constructorParam = "";
-    if (configurations != null) {
-      checkArgument(isStatic(configurations.getModifiers()));
-      checkArgument(index >= 0);
-      String configurationName = configurations.getDeclaringClass().getName()
-                  + "." + configurations.getName();
-      constructorParam = configurationName + ".get(" + index + ")";
-    }
-    String src = "package " + pkg + ";\n"
-        + "public class " + className + " implements " + LongUnaryOperator.class.getName() + " {\n"
-        + "  private final " + declaration(cls) + " test =\n"
-        + "      " + construct(cls) + "(" + constructorParam + ");\n"
-        + "  @Override\n"
-        + "  public long applyAsLong(long iterations) {\n"
-        + "    long startTime = " + System.class.getName() + ".nanoTime();\n"
-        + "    for (long i = 0; i < iterations; i++) {\n"
-        + "      test." + method.getName() + "();\n"
-        + "    }\n"
-        + "    long endTime = " + System.class.getName() + ".nanoTime();\n"
-        + "    return endTime - startTime;\n"
-        + "  }\n"
-        + "}\n";
-    InMemoryJavaFileManager bytecodes = compile(pkg, className, src);
+    Batch batch = new Batch();
+    Function<ClassLoader, LongUnaryOperator> hotLoop = batch.add(
+        cls,
+        method,
+        (configurations == null) ? ImmutableList.of() : ImmutableList.of(configurations),
+        (configurations == null) ? new int[0] : new int[] { index },
+        HotLoopOptions.DEFAULT,
+        forkingClasses,
+        forkingCoreClassesMatching);
+    return hotLoop.apply(classLoader);
+  }
+
+  /**
+   * Generates hot loops for several benchmarks, compiling them all in a single javac task the first time any of them
+   * is loaded, so javac's startup and symbol table costs are paid once rather than per benchmark.
+   *
+   * <p>Each hot loop is still loaded through its own unshared class-loader. If the batch fails to compile, each hot
+   * loop is compiled on its own, so only the benchmarks whose hot loops are broken fail.
+   */
+  static class Batch {
+
+    private final Map<String, JavaFileObject> sources = new LinkedHashMap<>();
+    private final Map<String, HashCode> cacheKeys = new LinkedHashMap<>();
+    private final Map<Field, List<?>> overrides;
+
+    /** Compiled hot loops by class name, or null until the batch is compiled. */
+    private Map<String, InMemoryJavaFileManager> bytecodes;
+    private final Map<String, String> failures = new HashMap<>();
+
+    Batch() {
+      this(ImmutableMap.of());
+    }
+
+    /**
+     * Creates a batch whose hot loops read their configurations from {@code overrides}, inlined as literals, in place
+     * of the given fields' own lists.
+     */
+    Batch(Map<Field, List<?>> overrides) {
+      this.overrides = ImmutableMap.copyOf(overrides);
+    }
+
+    /**
+     * Adds a hot loop to the batch, returning a function that loads a fresh instance of it through an unshared
+     * class-loader with the given parent.
+     *
+     * <p>The benchmark class is constructed with element {@code indices[i]} of the {@code i}th configurations list.
+     *
+     * @throws IllegalStateException if the batch has already been compiled
+     */
+    @SafeVarargs
+    final Function<ClassLoader, LongUnaryOperator> add(
+        Class<?> cls,
+        Method method,
+        List<Field> configurations,
+        int[] indices,
+        HotLoopOptions options,
+        boolean forkingClasses,
+        Predicate<Class<?>>... forkingCoreClassesMatching) {
+      checkArgument(configurations.size() == indices.length);
+      List<String> constructorArguments = new ArrayList<>();
+      for (int i = 0; i < indices.length; i++) {
+        Field configuration = configurations.get(i);
+        checkArgument(isStatic(configuration.getModifiers()));
+        checkArgument(indices[i] >= 0);
+        if (overrides.containsKey(configuration)) {
+          constructorArguments.add(literal(overrides.get(configuration).get(indices[i])));
+        } else {
+          String configurationName = configuration.getDeclaringClass().getName()
+                      + "." + configuration.getName();
+          constructorArguments.add(configurationName + ".get(" + indices[i] + ")");
+        }
+      }
+      List<Class<?>> referenced = configurations.stream().map(Field::getDeclaringClass).collect(toList());
+      return add(cls, method, constructorArguments, referenced, options, forkingClasses, forkingCoreClassesMatching);
+    }
+
+    /**
+     * Adds a hot loop to the batch, constructing the benchmark class with {@code configuration} inlined as literals,
+     * rather than read from configurations lists.
+     *
+     * @throws IllegalArgumentException if a value has no literal form
+     * @throws IllegalStateException if the batch has already been compiled
+     */
+    @SafeVarargs
+    final Function<ClassLoader, LongUnaryOperator> addWithValues(
+        Class<?> cls,
+        Method method,
+        List<?> configuration,
+        HotLoopOptions options,
+        boolean forkingClasses,
+        Predicate<Class<?>>... forkingCoreClassesMatching) {
+      return add(
+          cls,
+          method,
+          configuration.stream().map(BenchmarkCompiler::literal).collect(toList()),
+          ImmutableList.of(),
+          options,
+          forkingClasses,
+          forkingCoreClassesMatching);
+    }
+
+    @SafeVarargs
+    private final synchronized Function<ClassLoader, LongUnaryOperator> add(
+        Class<?> cls,
+        Method method,
+        List<String> constructorArguments,
+        List<Class<?>> referenced,
+        HotLoopOptions options,
+        boolean forkingClasses,
+        Predicate<Class<?>>... forkingCoreClassesMatching) {
+      checkState(bytecodes == null, "Batch already compiled");
+      checkArgument(cls.isAssignableFrom(method.getDeclaringClass()));
+      String pkg = method.getDeclaringClass().getPackage().getName();
+      if (pkg.startsWith("java.")) {
+        pkg = "looper." + pkg;
+      }
+      // Name the hot loop after its own source, so its cache key does not depend on how many hot loops were
+      // generated before it. Identical hot loops share a name, and are compiled once.
+      String template = hotLoopSource(pkg, "Benchmark", cls, method, constructorArguments, options);
+      String className = "Benchmark_" + Hashing.sha256().hashString(template, UTF_8).toString().substring(0, 16);
+      String src = hotLoopSource(pkg, className, cls, method, constructorArguments, options);
+      String qualifiedName = pkg + "." + className;
+      sources.put(qualifiedName, sourceObject(pkg, className, src));
+      if (ClassCache.instance().isEnabled()) {
+        cacheKeys.put(qualifiedName, cacheKey(src, cls, method, referenced));
+      }
+      return classLoader -> load(
+          classLoader, bytecodes(qualifiedName), qualifiedName, forkingClasses, forkingCoreClassesMatching);
+    }
+
+    /**
+     * Returns the compiled hot loop {@code className}, compiling the batch if this is the first load.
+     *
+     * @throws IllegalStateException if the hot loop does not compile
+     */
+    private synchronized InMemoryJavaFileManager bytecodes(String className) {
+      if (bytecodes == null) {
+        bytecodes = new HashMap<>();
+        InMemoryJavaFileManager batch = cached();
+        if (batch == null) {
+          try {
+            batch = compile(ImmutableList.copyOf(sources.values()));
+            cache(batch, cacheKeys.keySet());
+          } catch (IllegalStateException e) {
+            compileSeparately();
+          }
+        }
+        if (batch != null) {
+          for (String hotLoop : sources.keySet()) {
+            bytecodes.put(hotLoop, batch);
+          }
+        }
+      }
+      String failure = failures.get(className);
+      if (failure != null) {
+        throw new IllegalStateException(failure);
+      }
+      return bytecodes.get(className);
+    }
+
+    /**
+     * Compiles each hot loop in its own javac task, recording the errors of any that fail.
+     */
+    private void compileSeparately() {
+      sources.forEach((className, source) -> {
+        try {
+          InMemoryJavaFileManager hotLoop = compile(ImmutableList.of(source));
+          cache(hotLoop, cacheKeys.containsKey(className) ? ImmutableList.of(className) : ImmutableList.of());
+          bytecodes.put(className, hotLoop);
+        } catch (IllegalStateException e) {
+          failures.put(className, e.getMessage());
+        }
+      });
+    }
+
+    private void cache(InMemoryJavaFileManager compiled, Iterable<String> classNames) {
+      try {
+        for (String className : classNames) {
+          InMemoryJavaFile classFile = (InMemoryJavaFile) compiled.getJavaFileForInput(
+              StandardLocation.CLASS_OUTPUT, className, Kind.CLASS);
+          ClassCache.instance().put(cacheKeys.get(className), classFile.getBuffer());
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /**
+     * Returns the whole batch from the on-disk cache, or null if any hot loop is missing.
+     */
+    private InMemoryJavaFileManager cached() {
+      if (cacheKeys.size() != sources.size()) {
+        return null;
+      }
+      Map<String, ByteBuffer> classFiles = new LinkedHashMap<>();
+      for (Map.Entry<String, HashCode> entry : cacheKeys.entrySet()) {
+        ByteBuffer classFile = ClassCache.instance().get(entry.getValue());
+        if (classFile == null) {
+          return null;
+        }
+        classFiles.put(entry.getKey(), classFile);
+      }
+      InMemoryJavaFileManager fileManager = InMemoryJavaFileManager.create(null);
+      classFiles.forEach((className, classFile) -> {
+        JavaFileObject file = fileManager.getJavaFileForOutput(
+            StandardLocation.CLASS_OUTPUT, className, Kind.CLASS, null);
+        try (WritableByteChannel out = Channels.newChannel(file.openOutputStream())) {
+          out.write(classFile);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+      return fileManager;
+    }
+  }
+
+  /**
+   * Returns a key covering everything javac's output for {@code src} depends on: the source itself, and the classes
+   * whose members it references.
+   */
+  private static HashCode cacheKey(String src, Class<?> cls, Method method, List<Class<?>> dependencies) {
+    Hasher key = ClassCache.newKey("hotloop").putString(src, UTF_8);
+    Stream.concat(Stream.of(cls, method.getDeclaringClass()), dependencies.stream())
+        .distinct()
+        .forEach(referenced -> {
+          ClassLoader classLoader = (referenced.getClassLoader() != null)
+              ? referenced.getClassLoader() : ClassLoader.getSystemClassLoader();
+          byte[] classBytes = ClassCache.classBytes(classLoader, referenced.getName());
+          key.putInt((classBytes == null) ? -1 : classBytes.length);
+          if (classBytes != null) {
+            key.putBytes(classBytes);
+          }
+        });
+    return key.hash();
+  }
+
+  private static String hotLoopSource(
+      String pkg,
+      String className,
+      Class<?> cls,
+      Method method,
+      List<String> constructorArguments,
+      HotLoopOptions options) {
+    String constructorParam = String.join(", ", constructorArguments);
+    String call = options.inline ? "test." + method.getName() + "();" : "call(test);";
+    StringBuilder src = new StringBuilder();
+    src.append("package " + pkg + ";\n")
+        .append("public class " + className + " implements " + LongUnaryOperator.class.getName() + " {\n")
+        .append("  private final " + declaration(cls) + " test =\n")
+        .append("      " + construct(cls) + "(" + constructorParam + ");\n");
+    if (options.barrier) {
+      src.append("  private volatile long sink = -1;\n");
+    }
+    if (!options.inline) {
+      src.append("  private static boolean never;\n");
+    }
+    src.append("  @Override\n")
+        .append("  public long applyAsLong(long iterations) {\n")
+        .append("    long startTime = " + System.class.getName() + ".nanoTime();\n")
+        .append("    long i = 0;\n");
+    if (options.unroll > 1) {
+      src.append("    for (; i + " + options.unroll + " <= iterations; i += " + options.unroll + ") {\n");
+      for (int j = 0; j < options.unroll; j++) {
+        src.append("      " + call + "\n");
+        if (options.barrier) {
+          src.append("      if (i + " + j + " == sink) throw new IllegalStateException();\n");
+        }
+      }
+      src.append("    }\n");
+    }
+    src.append("    for (; i < iterations; i++) {\n")
+        .append("      " + call + "\n");
+    if (options.barrier) {
+      src.append("      if (i == sink) throw new IllegalStateException();\n");
+    }
+    src.append("    }\n")
+        .append("    long endTime = " + System.class.getName() + ".nanoTime();\n")
+        .append("    return endTime - startTime;\n")
+        .append("  }\n");
+    if (!options.inline) {
+      // Never taken, but its bytecode makes the method too large for the JIT to inline
+      src.append("  private static void call(" + declaration(cls) + " test) {\n")
+          .append("    if (never) {\n");
+      for (int j = 0; j < DONT_INLINE_PADDING; j++) {
+        src.append("      never = false;\n");
+      }
+      src.append("    }\n")
+          .append("    test." + method.getName() + "();\n")
+          .append("  }\n");
+    }
+    return src.append("}\n").toString();
+  }
+
+  @SafeVarargs
+  private static LongUnaryOperator load(
+      ClassLoader classLoader,
+      InMemoryJavaFileManager bytecodes,
+      String className,
+      boolean forkingClasses,
+      Predicate<Class<?>>... forkingCoreClassesMatching) {
     ClassLoader forkingClassLoader = getClassLoader(classLoader, bytecodes, forkingClasses, forkingCoreClassesMatching);
     ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
     try {
       try {
         Thread.currentThread().setContextClassLoader(forkingClassLoader);
-        Class<?> generatedClass = forkingClassLoader.loadClass(pkg + "." + className);
+        Class<?> generatedClass = forkingClassLoader.loadClass(className);
         LongUnaryOperator benchmarkLoop = (LongUnaryOperator) generatedClass.newInstance();
         return jitObfuscate(benchmarkLoop);
       } catch (EclipseCompilerBug e) {
@@ -101,7 +453,7 @@ class BenchmarkCompiler {
         System.out.println("[WARN] Benchmarks may interfere");
         ClassLoader nonForkingClassLoader = bytecodes.getNonForkingClassLoader(classLoader);
         Thread.currentThread().setContextClassLoader(nonForkingClassLoader);
-        Class<?> generatedClass = nonForkingClassLoader.loadClass(pkg + "." + className);
+        Class<?> generatedClass = nonForkingClassLoader.loadClass(className);
         return (LongUnaryOperator) generatedClass.newInstance();
       }
     } catch (ReflectiveOperationException e) {
@@ -126,6 +478,59 @@ class BenchmarkCompiler {
     }
   }
 
+  /**
+   * Returns a Java expression evaluating to {@code value}.
+   *
+   * @throws IllegalArgumentException if the value has no literal form
+   */
+  static String literal(Object value) {
+    if (value instanceof Integer) {
+      return Integer.class.getName() + ".valueOf(" + value + ")";
+    } else if (value instanceof Long) {
+      return Long.class.getName() + ".valueOf(" + value + "L)";
+    } else if (value instanceof Short) {
+      return Short.class.getName() + ".valueOf((short) " + value + ")";
+    } else if (value instanceof Byte) {
+      return Byte.class.getName() + ".valueOf((byte) " + value + ")";
+    } else if (value instanceof Double && Double.isFinite((Double) value)) {
+      return Double.class.getName() + ".valueOf(" + value + ")";
+    } else if (value instanceof Float && Float.isFinite((Float) value)) {
+      return Float.class.getName() + ".valueOf(" + value + "f)";
+    } else if (value instanceof Boolean) {
+      return Boolean.class.getName() + "." + (((Boolean) value) ? "TRUE" : "FALSE");
+    } else if (value instanceof String) {
+      StringBuilder literal = new StringBuilder("\"");
+      for (char c : ((String) value).toCharArray()) {
+        if (c == '"' || c == '\\') {
+          literal.append('\\').append(c);
+        } else if (c < ' ') {
+          // Not unicode escapes, which javac translates before lexing, so a newline would end the literal
+          literal.append(controlEscape(c));
+        } else if (c > '~') {
+          literal.append(String.format("\\u%04x", (int) c));
+        } else {
+          literal.append(c);
+        }
+      }
+      return literal.append('"').toString();
+    } else if (value instanceof Enum && isPublic(((Enum<?>) value).getDeclaringClass().getModifiers())) {
+      Enum<?> constant = (Enum<?>) value;
+      return constant.getDeclaringClass().getCanonicalName() + "." + constant.name();
+    }
+    throw new IllegalArgumentException("Cannot inline " + value.getClass().getSimpleName() + " " + value);
+  }
+
+  private static String controlEscape(char c) {
+    switch (c) {
+      case '\b': return "\\b";
+      case '\t': return "\\t";
+      case '\n': return "\\n";
+      case '\f': return "\\f";
+      case '\r': return "\\r";
+      default: return String.format("\\%03o", (int) c);
+    }
+  }
+
   private static String declaration(Class<?> cls) {
     StringBuilder declaration = new StringBuilder();
     declaration.append(cls.getName());
@@ -148,9 +553,12 @@ class BenchmarkCompiler {
     return construct.toString();
   }
 
-  private static InMemoryJavaFileManager compile(String pkg, String className, String src) {
+  private static JavaFileObject sourceObject(String pkg, String className, String src) {
     URI uri = URI.create("temp://" + pkg.replace(".", "/") + "/" + className + ".java");
-    JavaFileObject loopSource = new SourceObject(uri, Kind.SOURCE, src);
+    return new SourceObject(uri, Kind.SOURCE, src);
+  }
+
+  private static InMemoryJavaFileManager compile(List<JavaFileObject> sources) {
     StringWriter writer = new StringWriter();
     DiagnosticListener<? super JavaFileObject> diagnosticListener =
         diagnostic -> writer.write(diagnostic.toString() + "\n");
@@ -161,7 +569,7 @@ class BenchmarkCompiler {
         diagnosticListener,
         ImmutableList.of(),
         null,  // class names
-        ImmutableList.of(loopSource));
+        sources);
     boolean compiled = task.call();
     if (!compiled) {
       String messages = writer.toString().trim();
@@ -173,8 +581,26 @@ class BenchmarkCompiler {
     return fileManager;
   }
 
+  /**
+   * Returns the class-loader {@code hotLoop}, as returned by this class, was generated in.
+   */
+  static ClassLoader generatedClassLoader(LongUnaryOperator hotLoop) {
+    return generatedClass(hotLoop).getClassLoader();
+  }
+
+  /**
+   * Returns the generated class containing {@code hotLoop}, as returned by this class.
+   */
+  static Class<?> generatedClass(LongUnaryOperator hotLoop) {
+    if (hotLoop instanceof RoundRobinLongUnaryOperator) {
+      return ((RoundRobinLongUnaryOperator) hotLoop).target.getClass();
+    }
+    return hotLoop.getClass();
+  }
+
   private static LongUnaryOperator jitObfuscate(LongUnaryOperator target) {
     return new RoundRobinLongUnaryOperator(
+        target,
         new DelegatingLongUnaryOperator1(target),
         new DelegatingLongUnaryOperator2(target),
         new DelegatingLongUnaryOperator3(target));
@@ -182,10 +608,12 @@ class BenchmarkCompiler {
 
   private static class RoundRobinLongUnaryOperator implements LongUnaryOperator {
 
+    private final LongUnaryOperator target;
     private final LongUnaryOperator[] operators;
     private int index = 0;
 
-    RoundRobinLongUnaryOperator(LongUnaryOperator... operators) {
+    RoundRobinLongUnaryOperator(LongUnaryOperator target, LongUnaryOperator... operators) {
+      this.target = target;
       this.operators = operators;
     }
 
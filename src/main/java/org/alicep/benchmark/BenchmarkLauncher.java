@@ -0,0 +1,422 @@
+package org.alicep.benchmark;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.alicep.benchmark.BenchmarkRunner.Benchmark;
+import org.alicep.benchmark.BenchmarkRunner.Configuration;
+import org.alicep.benchmark.BenchmarkRunner.Mode;
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.TestClass;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Runs benchmarks from the command line, without JUnit discovery or filters.
+ *
+ * <p>Scans the classpath, or just the directories and jars on it given as arguments, for classes with
+ * {@link Benchmark} methods, and runs those matching the include and exclude patterns with {@link BenchmarkRunner}.
+ * Run with {@code --help} for the options.
+ */
+public class BenchmarkLauncher {
+
+  private static final String USAGE = String.join("\n",
+      "Usage: java -cp <classpath> " + BenchmarkLauncher.class.getName() + " [options] [directory or jar...]",
+      "",
+      "Runs the @Benchmark methods found in the given classpath entries, or the whole classpath if none are given.",
+      "",
+      "Options:",
+      "  -i, --include REGEX   run only benchmarks whose Class.method name contains a match (repeatable)",
+      "  -e, --exclude REGEX   skip benchmarks whose Class.method name contains a match (repeatable)",
+      "  -p NAME=V1,V2,...     benchmark these values of @Configuration fields called NAME (repeatable)",
+      "  -f, --format FORMAT   also write results as csv or json",
+      "  -o, --output FILE     write formatted results to FILE rather than standard output, which otherwise",
+      "                        gets only the formatted results, with progress going to standard error",
+      "  -l, --list            list the matching benchmarks without running them",
+      "  -h, --help            print this message");
+
+  private static final String BENCHMARK_DESCRIPTOR = "L" + Benchmark.class.getName().replace('.', '/') + ";";
+
+  public static void main(String... args) {
+    BenchmarkLauncher launcher;
+    try {
+      launcher = new BenchmarkLauncher(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println();
+      System.err.println(USAGE);
+      System.exit(2);
+      return;
+    }
+    if (launcher.help) {
+      System.out.println(USAGE);
+      return;
+    }
+    System.exit(launcher.run() ? 0 : 1);
+  }
+
+  private final List<Pattern> includes = new ArrayList<>();
+  private final List<Pattern> excludes = new ArrayList<>();
+  private final Map<String, String> configurationOverrides = new LinkedHashMap<>();
+  private final List<Path> roots = new ArrayList<>();
+  private String format = "text";
+  private Path output;
+  private boolean list;
+  private boolean help;
+
+  BenchmarkLauncher(String... args) {
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      switch (arg) {
+        case "-i":
+        case "--include":
+          includes.add(Pattern.compile(value(args, ++i, arg)));
+          break;
+        case "-e":
+        case "--exclude":
+          excludes.add(Pattern.compile(value(args, ++i, arg)));
+          break;
+        case "-p": {
+          String override = value(args, ++i, arg);
+          int equals = override.indexOf('=');
+          if (equals <= 0) {
+            throw new IllegalArgumentException("Expected NAME=V1,V2,... after -p, not " + override);
+          }
+          configurationOverrides.put(override.substring(0, equals), override.substring(equals + 1));
+          break;
+        }
+        case "-f":
+        case "--format":
+          format = value(args, ++i, arg);
+          if (!format.equals("text") && !format.equals("csv") && !format.equals("json")) {
+            throw new IllegalArgumentException("Unknown format " + format);
+          }
+          break;
+        case "-o":
+        case "--output":
+          output = Paths.get(value(args, ++i, arg));
+          break;
+        case "-l":
+        case "--list":
+          list = true;
+          break;
+        case "-h":
+        case "--help":
+          help = true;
+          break;
+        default:
+          if (arg.startsWith("-")) {
+            throw new IllegalArgumentException("Unknown option " + arg);
+          }
+          roots.add(Paths.get(arg).toAbsolutePath().normalize());
+      }
+    }
+  }
+
+  private static String value(String[] args, int index, String option) {
+    if (index >= args.length) {
+      throw new IllegalArgumentException("Missing value after " + option);
+    }
+    return args[index];
+  }
+
+  /**
+   * Runs, or lists, the matching benchmarks, returning false if any failed.
+   */
+  private boolean run() {
+    PrintStream stdout = System.out;
+    if (!list && !format.equals("text") && output == null) {
+      // Keep standard output clean for the formatted results
+      System.setOut(System.err);
+    }
+    try {
+      List<BenchmarkRunner> runners = new ArrayList<>();
+      List<Class<?>> classes = new ArrayList<>();
+      int failures = 0;
+      for (Class<?> cls : benchmarkClasses()) {
+        try {
+          BenchmarkRunner runner = new BenchmarkRunner(
+              cls, method -> matches(cls.getName() + "." + method.getName()), configurationOverrides);
+          if (!runner.getChildren().isEmpty()) {
+            runners.add(runner);
+            classes.add(cls);
+          }
+        } catch (InitializationError e) {
+          failures++;
+          System.err.println(cls.getName() + ":");
+          e.getCauses().forEach(cause -> System.err.println("  " + cause));
+        }
+      }
+      try {
+        checkConfigurationNames(configurationOverrides.keySet(), classes);
+      } catch (IllegalArgumentException e) {
+        System.err.println(e.getMessage());
+        return false;
+      }
+
+      if (list) {
+        runners.stream()
+            .flatMap(runner -> BenchmarkRunner.leaves(runner.getDescription()))
+            .forEach(description -> System.out.println(
+                description.getClassName() + "." + description.getMethodName()));
+        return failures == 0;
+      }
+
+      List<Failure> failed = new ArrayList<>();
+      RunNotifier notifier = new RunNotifier();
+      notifier.addListener(new RunListener() {
+        @Override
+        public void testFailure(Failure failure) {
+          failed.add(failure);
+        }
+      });
+      for (BenchmarkRunner runner : runners) {
+        runner.run(notifier);
+      }
+      for (Failure failure : failed) {
+        System.err.println(failure.getTestHeader() + ":");
+        failure.getException().printStackTrace();
+      }
+      if (!format.equals("text")) {
+        writeResults(runners, stdout);
+      }
+      return failures == 0 && failed.isEmpty();
+    } finally {
+      System.setOut(stdout);
+    }
+  }
+
+  /**
+   * Checks every overridden name is a {@link Configuration} field of at least one of {@code classes}, so a typo does
+   * not silently run the default configurations.
+   *
+   * @throws IllegalArgumentException naming the unknown names and the valid ones
+   */
+  static void checkConfigurationNames(Collection<String> names, List<Class<?>> classes) {
+    Set<String> fields = new TreeSet<>();
+    for (Class<?> cls : classes) {
+      new TestClass(cls).getAnnotatedFields(Configuration.class).forEach(field -> fields.add(field.getName()));
+    }
+    List<String> unknown = names.stream().filter(name -> !fields.contains(name)).collect(toList());
+    if (!unknown.isEmpty()) {
+      throw new IllegalArgumentException("No @Configuration field called " + String.join(", ", unknown)
+          + " in the matching benchmarks; expected one of: " + String.join(", ", fields));
+    }
+  }
+
+  private boolean matches(String name) {
+    return (includes.isEmpty() || includes.stream().anyMatch(pattern -> pattern.matcher(name).find()))
+        && excludes.stream().noneMatch(pattern -> pattern.matcher(name).find());
+  }
+
+  private List<Class<?>> benchmarkClasses() {
+    TreeSet<String> classNames = new TreeSet<>();
+    List<Path> unscanned = new ArrayList<>(roots);
+    for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      Path path = Paths.get(entry).toAbsolutePath().normalize();
+      if (roots.isEmpty() || roots.contains(path)) {
+        unscanned.remove(path);
+        scan(path, classNames);
+      }
+    }
+    for (Path root : unscanned) {
+      System.out.println("[WARN] " + root + " is not on the classpath, so was not scanned");
+    }
+    List<Class<?>> classes = new ArrayList<>();
+    for (String className : classNames) {
+      try {
+        Class<?> cls = Class.forName(className, false, BenchmarkLauncher.class.getClassLoader());
+        boolean isInstantiable = !Modifier.isAbstract(cls.getModifiers())
+            && !cls.isAnonymousClass()
+            && !cls.isLocalClass()
+            && (!cls.isMemberClass() || Modifier.isStatic(cls.getModifiers()));
+        if (isInstantiable) {
+          classes.add(cls);
+        }
+      } catch (ClassNotFoundException | LinkageError e) {
+        System.out.println("[WARN] Cannot load " + className + ": " + e);
+      }
+    }
+    return classes;
+  }
+
+  /**
+   * Adds the names of classes in {@code root} that reference {@link Benchmark}, found without loading any classes.
+   */
+  private static void scan(Path root, TreeSet<String> classNames) {
+    try {
+      if (Files.isDirectory(root)) {
+        try (Stream<Path> files = Files.walk(root)) {
+          files.filter(file -> file.toString().endsWith(".class")).forEach(file -> {
+            try {
+              if (referencesBenchmark(Files.readAllBytes(file))) {
+                classNames.add(className(root.relativize(file).toString().replace(File.separatorChar, '/')));
+              }
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+        }
+      } else if (Files.isRegularFile(root)) {
+        try (ZipFile jar = new ZipFile(root.toFile())) {
+          Enumeration<? extends ZipEntry> entries = jar.entries();
+          while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.getName().endsWith(".class")) {
+              try (InputStream in = jar.getInputStream(entry)) {
+                if (referencesBenchmark(ByteStreams.toByteArray(in))) {
+                  classNames.add(className(entry.getName()));
+                }
+              }
+            }
+          }
+        }
+      }
+    } catch (IOException | UncheckedIOException e) {
+      System.out.println("[WARN] Cannot scan " + root + ": " + e);
+    }
+  }
+
+  private static boolean referencesBenchmark(byte[] bytecode) {
+    return new String(bytecode, ISO_8859_1).contains(BENCHMARK_DESCRIPTOR);
+  }
+
+  private static String className(String path) {
+    return path.substring(0, path.length() - ".class".length()).replace('/', '.');
+  }
+
+  /**
+   * Writes the results in {@link #format} to {@link #output}, or to {@code stdout} if none was given.
+   */
+  private void writeResults(List<BenchmarkRunner> runners, PrintStream stdout) {
+    List<List<Object>> rows = new ArrayList<>();
+    runners.stream()
+        .flatMap(BenchmarkRunner::singleBenchmarks)
+        .filter(benchmark -> !Double.isNaN(benchmark.meanNanos()))
+        .forEach(benchmark -> {
+          Description description = benchmark.getDescription();
+          String method = description.getMethodName();
+          int configurationStart = method.indexOf(" [");
+          List<Object> row = new ArrayList<>();
+          row.add(description.getClassName() + "."
+              + ((configurationStart < 0) ? method : method.substring(0, configurationStart)));
+          row.add((benchmark.config() == null) ? null : benchmark.config().toString());
+          row.add(description.getAnnotation(Mode.class).value().toString());
+          row.add(benchmark.meanNanos());
+          row.add(Double.isFinite(benchmark.errorNanos()) ? benchmark.errorNanos() : null);
+          row.add(benchmark.operationsPerInvocation());
+          row.add((benchmark.allocatedBytes() < 0) ? null : benchmark.allocatedBytes());
+          row.add(benchmark.isStationary());
+          rows.add(row);
+        });
+    List<String> columns = Stream.of(
+        "benchmark", "configuration", "mode", "nanos", "errorNanos", "operations", "allocatedBytes", "stationary")
+        .collect(toList());
+
+    // Embed the environment so results from different runs can be compared fairly
+    Map<String, Object> environment = Environment.instance().fingerprint();
+    StringBuilder results = new StringBuilder();
+    if (format.equals("csv")) {
+      environment.forEach((key, value) -> results
+          .append("# ").append(key).append(": ").append((value == null) ? "" : value).append('\n'));
+      results.append(String.join(",", columns)).append('\n');
+      for (List<Object> row : rows) {
+        results.append(row.stream().map(BenchmarkLauncher::csv).collect(joining(","))).append('\n');
+      }
+    } else {
+      results.append("{\n  \"environment\": {");
+      results.append(environment.entrySet()
+          .stream()
+          .map(entry -> json(entry.getKey()) + ": " + json(entry.getValue()))
+          .collect(joining(", ")));
+      results.append("},\n  \"results\": [\n");
+      for (int r = 0; r < rows.size(); r++) {
+        List<Object> row = rows.get(r);
+        results.append("    {");
+        for (int c = 0; c < columns.size(); c++) {
+          results.append((c == 0) ? "" : ", ").append(json(columns.get(c))).append(": ").append(json(row.get(c)));
+        }
+        results.append((r + 1 < rows.size()) ? "},\n" : "}\n");
+      }
+      results.append("  ]\n}\n");
+    }
+
+    if (output == null) {
+      stdout.print(results);
+      stdout.flush();
+      return;
+    }
+    try {
+      if (output.getParent() != null) {
+        Files.createDirectories(output.getParent());
+      }
+      Files.write(output, results.toString().getBytes(UTF_8));
+      System.out.println("Results written to " + output);
+    } catch (IOException e) {
+      System.out.println("[WARN] Results not written: " + e);
+    }
+  }
+
+  static String csv(Object value) {
+    if (value == null) {
+      return "";
+    }
+    String text = value.toString();
+    if (text.contains(",") || text.contains("\"") || text.contains("\n")) {
+      return "\"" + text.replace("\"", "\"\"") + "\"";
+    }
+    return text;
+  }
+
+  /**
+   * Formats {@code value} as JSON, writing NaN and infinities, which JSON cannot represent, as null.
+   */
+  static String json(Object value) {
+    if (value == null) {
+      return "null";
+    } else if (value instanceof Double || value instanceof Float) {
+      return Double.isFinite(((Number) value).doubleValue()) ? value.toString() : "null";
+    } else if (value instanceof Number || value instanceof Boolean) {
+      return value.toString();
+    }
+    StringBuilder json = new StringBuilder("\"");
+    for (char c : value.toString().toCharArray()) {
+      if (c == '"' || c == '\\') {
+        json.append('\\').append(c);
+      } else if (c < ' ') {
+        json.append(String.format("\\u%04x", (int) c));
+      } else {
+        json.append(c);
+      }
+    }
+    return json.append('"').toString();
+  }
+}
@@ -1,5 +1,6 @@
 package org.alicep.benchmark;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Iterables.getOnlyElement;
 import static java.util.Arrays.stream;
@@ -12,16 +13,22 @@ import java.io.PrintStream;
 import java.lang.annotation.Annotation;
 import java.lang.annotation.Documented;
 import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.function.LongUnaryOperator;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -35,6 +42,9 @@ import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
 import org.junit.runners.model.TestClass;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
 public class BenchmarkRunner extends ParentRunner<Runner> {
 
   @Documented
@@ -63,13 +73,180 @@ public class BenchmarkRunner extends ParentRunner<Runner> {
     boolean enabled() default true;
   }
 
+  /**
+   * Forks matching core (java.*) classes for each benchmark, in addition to java.util's Map and Set implementations, so
+   * their JIT profiles are not polluted by other benchmarks.
+   *
+   * <p>Matches classes in one of {@code packages} (if any are given) that are subtypes of one of {@code types} (if any
+   * are given). A package ending {@code .*} also matches its subpackages. Repeat the annotation, on the class or
+   * method, to fork classes matching any of several patterns.
+   *
+   * <p>Interfaces, and classes with native methods, are never forked. Non-public core classes are forked whenever
+   * referenced, as forked classes cannot access the originals; prefer package patterns, as forked classes cannot
+   * access package-private members of unforked ones either.
+   *
+   * <p>Run with {@code -Dbenchmark.listForkedClasses=true} to list the core classes each benchmark actually forked.
+   */
+  @Documented
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ ElementType.METHOD, ElementType.TYPE })
+  @Repeatable(ForkCoreClasses.List.class)
+  public @interface ForkCoreClasses {
+    String[] packages() default {};
+    Class<?>[] types() default {};
+
+    @Documented
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ ElementType.METHOD, ElementType.TYPE })
+    public @interface List {
+      ForkCoreClasses[] value();
+    }
+  }
+
+  /**
+   * A static list of configurations to construct the benchmark class with, one benchmark per element.
+   *
+   * <p>Annotate several fields to benchmark every combination of their elements. The constructor then takes one
+   * parameter per field, in declaration order, and results are printed as a table with a column per field.
+   */
   @Documented
   @Retention(RetentionPolicy.RUNTIME)
   @Target(ElementType.FIELD)
   public @interface Configuration { }
 
+  /**
+   * A static method returning false for combinations of {@link Configuration} elements not to benchmark. It takes one
+   * parameter per configuration field, like the constructor.
+   */
+  @Documented
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target(ElementType.METHOD)
+  public @interface ConfigurationFilter { }
+
+  /**
+   * Searches for performance cliffs over the benchmark's {@link Configuration}, which must be a single list of
+   * {@code Byte}, {@code Short}, {@code Integer}, {@code Long}, {@code Float} or {@code Double} values.
+   *
+   * <p>After benchmarking each listed value, the runner repeatedly benchmarks the point between the adjacent pair whose
+   * time or memory per element differs most, stopping when no pair differs by more than {@code tolerance}, or when
+   * {@code maxBenchmarks} have run. The cliffs found are printed at the end.
+   */
+  @Documented
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ ElementType.TYPE, ElementType.METHOD })
+  public @interface SearchForCliffs {
+    double tolerance() default 0.2;
+    int maxBenchmarks() default 30;
+  }
+
+  /**
+   * What to measure and report:
+   *
+   * <ul>
+   * <li>{@code AVERAGE}: mean time per call at steady state (the default)
+   * <li>{@code THROUGHPUT}: calls, or operations, per second at steady state
+   * <li>{@code SINGLE_SHOT}: the cold-start cost of a single call, each made through a fresh class-loader, so class
+   *     initialization and interpreted execution are included; reported as a distribution over at least
+   *     {@link MinSamples} trials lasting {@link MinBenchmarkTime} in total. Core collections are not forked by default
+   *     in this mode, as rewriting them on first use would dominate the timings
+   * </ul>
+   */
+  @Documented
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ ElementType.TYPE, ElementType.METHOD })
+  public @interface Mode {
+    Kind value() default Kind.AVERAGE;
+
+    enum Kind { AVERAGE, THROUGHPUT, SINGLE_SHOT }
+  }
+
+  /**
+   * Number of operations each call to the benchmark method performs, so results are reported per operation, with
+   * throughput, rather than per call.
+   *
+   * <p>Set {@code fromConfiguration} to use the benchmark's configuration, which must then be a single
+   * {@link Configuration} list of {@link Number}s, instead of {@code value}.
+   */
+  @Documented
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ ElementType.TYPE, ElementType.METHOD })
+  public @interface OperationsPerInvocation {
+    long value() default 1;
+    boolean fromConfiguration() default false;
+  }
+
+  /**
+   * How the generated hot loop calls the benchmark method. By default, each loop iteration makes one call, which the
+   * JIT is free to inline, and to unroll and hoist work across, as it might in production.
+   *
+   * <ul>
+   * <li>{@code unroll}: calls per loop iteration, to reduce loop overhead, or to match a production loop
+   * <li>{@code barrier}: after each call, compare the loop index with a volatile field, so the JIT cannot move work
+   *     from one call to another
+   * <li>{@code inline}: set to false to measure the method as an isolated call, which the JIT cannot inline
+   * </ul>
+   *
+   * <p>The empty hot loop subtracted from results is calibrated with the same options.
+   */
+  @Documented
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ ElementType.TYPE, ElementType.METHOD })
+  public @interface HotLoop {
+    int unroll() default 1;
+    boolean barrier() default false;
+    boolean inline() default true;
+  }
+
+  /**
+   * Runs the benchmark once per flag set, each in a fresh JVM, and prints the results side by side, with the
+   * difference in time and allocation from the first flag set, and whether the time difference is significant.
+   *
+   * <p>Each flag set is a whitespace-separated list of JVM arguments, e.g. {@code "-XX:+UseParallelGC -Xmx1g"}; use
+   * {@code ""} for the JVM's defaults. Child JVMs share this JVM's classpath and {@code benchmark.*} system
+   * properties, but none of its other arguments.
+   */
+  @Documented
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ ElementType.TYPE, ElementType.METHOD })
+  public @interface JvmArgs {
+    String[] value();
+  }
+
+  /**
+   * Discard timings from before the benchmark's mean last shifted, say from thermal throttling, heap growth or a
+   * gradual deoptimization, and keep sampling until the remaining timings are stationary and precise enough.
+   *
+   * <p>Without this, drift is only reported. The runner stops discarding once it has run for {@code maxTimeFactor}
+   * times {@link MinBenchmarkTime}, reporting the drift that remains.
+   */
+  @Documented
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ ElementType.TYPE, ElementType.METHOD })
+  public @interface DiscardDrift {
+    int maxTimeFactor() default 10;
+  }
+
+  /**
+   * Records the benchmark's measurement phase with Java Flight Recorder, saving a file per benchmark and printing a
+   * summary of the hottest methods, top allocations, lock contention and GC pauses.
+   *
+   * <p>Set the {@code benchmark.flightRecorder} system property to {@code true} to record every benchmark, or to a
+   * directory to save recordings somewhere other than {@code build/benchmark-recordings}.
+   */
+  @Documented
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target({ ElementType.TYPE, ElementType.METHOD })
+  public @interface FlightRecorder {
+    /** Name of the JFR settings to record with, {@code "default"} or {@code "profile"}. */
+    String settings() default "profile";
+  }
+
   /**
    * Minimum time to run the benchmark for (including discarded samples).
+   *
+   * <p>This and the other measurement settings can be overridden at runtime with system properties, environment
+   * variables, a {@code benchmark.properties} file or a {@code benchmark.profile} such as {@code quick} or
+   * {@code precise}; see the README.
    */
   @Documented
   @Retention(RetentionPolicy.RUNTIME)
@@ -111,25 +288,96 @@ public class BenchmarkRunner extends ParentRunner<Runner> {
 
   private final List<Runner> benchmarks;
 
-  private static List<Runner> getBenchmarks(TestClass testClass) throws InitializationError {
+  private static List<Runner> getBenchmarks(
+      TestClass testClass,
+      Predicate<Method> methodFilter,
+      Map<String, String> configurationOverrides) throws InitializationError {
     try {
-      List<FrameworkMethod> methods = testClass.getAnnotatedMethods(Benchmark.class);
+      List<FrameworkMethod> methods = testClass.getAnnotatedMethods(Benchmark.class)
+          .stream()
+          .filter(method -> methodFilter.test(method.getMethod()))
+          .collect(toList());
       testClass.getOnlyConstructor();
-      FrameworkField configurationsField = getOnlyElement(testClass.getAnnotatedFields(Configuration.class), null);
-      if (configurationsField != null) {
-        return configuredBenchmarks(testClass, methods, configurationsField);
+      if (methods.isEmpty()) {
+        return ImmutableList.of();
+      }
+      List<FrameworkField> configurationFields = testClass.getAnnotatedFields(Configuration.class);
+      Map<Field, List<?>> overrides = new HashMap<>();
+      for (FrameworkField field : configurationFields) {
+        String values = configurationOverrides.get(field.getName());
+        if (values != null) {
+          overrides.put(field.getField(), parseConfigurations(field, values));
+        }
+      }
+      BenchmarkCompiler.Batch hotLoops = new BenchmarkCompiler.Batch(overrides);
+      if (configurationFields.size() > 1) {
+        return gridBenchmarks(
+            testClass, methods, ConfigurationGrid.of(testClass, overrides), hotLoops, configurationOverrides);
+      } else if (!configurationFields.isEmpty()) {
+        FrameworkField configurationsField = getOnlyElement(configurationFields);
+        List<?> configurations = overrides.containsKey(configurationsField.getField())
+            ? overrides.get(configurationsField.getField())
+            : (List<?>) configurationsField.get(null);
+        return configuredBenchmarks(
+            testClass, methods, configurationsField, configurations, hotLoops, configurationOverrides);
       } else {
-        return unconfiguredBenchmarks(testClass, methods);
+        return unconfiguredBenchmarks(testClass, methods, hotLoops);
       }
     } catch (RuntimeException | IllegalAccessException e) {
       throw new InitializationError(e);
     }
   }
 
+  /**
+   * Parses comma-separated values of the same type as the elements already in {@code field}'s list: a string, boxed
+   * primitive or enum.
+   */
+  static List<Object> parseConfigurations(FrameworkField field, String values) throws IllegalAccessException {
+    List<?> existing = (List<?>) field.get(null);
+    Class<?> type = existing.isEmpty() ? String.class : existing.get(0).getClass();
+    if (type.getSuperclass() != null && type.getSuperclass().isEnum()) {
+      // An enum constant with a body is an anonymous subclass of its enum
+      type = type.getSuperclass();
+    }
+    List<Object> configurations = new ArrayList<>();
+    for (String value : values.split(",", -1)) {
+      configurations.add(parseConfiguration(type, value.trim(), field.getName()));
+    }
+    return configurations;
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private static Object parseConfiguration(Class<?> type, String value, String fieldName) {
+    try {
+      if (type == String.class) {
+        return value;
+      } else if (type == Integer.class) {
+        return Integer.valueOf(value);
+      } else if (type == Long.class) {
+        return Long.valueOf(value);
+      } else if (type == Double.class) {
+        return Double.valueOf(value);
+      } else if (type == Float.class) {
+        return Float.valueOf(value);
+      } else if (type == Boolean.class) {
+        checkArgument(value.equals("true") || value.equals("false"), "Not a boolean");
+        return Boolean.valueOf(value);
+      } else if (type.isEnum()) {
+        return Enum.valueOf((Class<? extends Enum>) type, value);
+      }
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(
+          "Cannot parse \"" + value + "\" as a " + type.getSimpleName() + " for @Configuration " + fieldName, e);
+    }
+    throw new IllegalArgumentException(
+        "Cannot override @Configuration " + fieldName + " of " + type.getSimpleName() + " values");
+  }
+
   @MinBenchmarkTime
   @MinSamples
   @MinSampleTime
   @TargetError
+  @Mode
   private static Description createSingleBenchmarkDescription(
       TestClass cls,
       FrameworkMethod method,
@@ -147,27 +395,49 @@ public class BenchmarkRunner extends ParentRunner<Runner> {
             .findFirst()
             .orElse(annotation));
       });
+      Stream.of(OperationsPerInvocation.class, FlightRecorder.class, DiscardDrift.class, HotLoop.class,
+              JvmArgs.class)
+          .forEach(type -> Stream.of(method.getAnnotation(type), cls.getAnnotation(type))
+              .filter(obj -> obj != null)
+              .findFirst()
+              .ifPresent(annotation -> annotations.put(type, annotation)));
       return createTestDescription(cls.getName(), name, annotations.values().toArray(new Annotation[0]));
     } catch (ReflectiveOperationException e) {
       throw new AssertionError(e);
     }
   }
 
-  private static List<Runner> unconfiguredBenchmarks(TestClass testClass, List<FrameworkMethod> methods) {
+  private static List<Runner> unconfiguredBenchmarks(
+      TestClass testClass,
+      List<FrameworkMethod> methods,
+      BenchmarkCompiler.Batch hotLoops) {
     List<Runner> benchmarks = new ArrayList<>();
     for (FrameworkMethod method : methods) {
+      checkArgument(!operationsFromConfiguration(method),
+          "@OperationsPerInvocation(fromConfiguration = true) %s needs a @Configuration field", method.getName());
       Description description = createSingleBenchmarkDescription(testClass, method, null);
-      Supplier<LongUnaryOperator> hotLoopFactory = () -> BenchmarkCompiler.compileBenchmark(
-          getClassLoader(testClass),
+      Function<ClassLoader, LongUnaryOperator> hotLoop = hotLoops.add(
           testClass.getJavaClass(),
           method.getMethod(),
+          ImmutableList.of(),
+          new int[0],
+          hotLoopOptions(method),
           forkingClasses(method),
-          BenchmarkRunner::isCoreCollection);
+          forkingCoreClasses(method));
+      Supplier<LongUnaryOperator> hotLoopFactory = () -> hotLoop.apply(getClassLoader(testClass));
       benchmarks.add(new SingleBenchmark(description, hotLoopFactory));
     }
     return benchmarks;
   }
 
+  private static BenchmarkCompiler.HotLoopOptions hotLoopOptions(FrameworkMethod method) {
+    HotLoop options = method.getAnnotation(HotLoop.class);
+    if (options == null) {
+      options = method.getDeclaringClass().getAnnotation(HotLoop.class);
+    }
+    return BenchmarkCompiler.HotLoopOptions.of(options);
+  }
+
   private static boolean forkingClasses(FrameworkMethod method) {
     WithForkingClassLoader config = method.getAnnotation(WithForkingClassLoader.class);
     if (config == null) {
@@ -176,6 +446,42 @@ public class BenchmarkRunner extends ParentRunner<Runner> {
     return config == null || config.enabled();
   }
 
+  private static Predicate<Class<?>> forkingCoreClasses(FrameworkMethod method) {
+    // Forking classes on first use would dominate a cold start, and in production the originals are usually loaded
+    Mode mode = Stream.of(method.getAnnotation(Mode.class), method.getDeclaringClass().getAnnotation(Mode.class))
+        .filter(obj -> obj != null)
+        .findFirst()
+        .orElse(null);
+    Predicate<Class<?>> predicate = (mode != null && mode.value() == Mode.Kind.SINGLE_SHOT)
+        ? cls -> false
+        : BenchmarkRunner::isCoreCollection;
+    for (AnnotatedElement element : Arrays.asList(method.getDeclaringClass(), method.getMethod())) {
+      for (ForkCoreClasses config : element.getAnnotationsByType(ForkCoreClasses.class)) {
+        predicate = predicate.or(coreClassesMatching(config));
+      }
+    }
+    return predicate;
+  }
+
+  private static Predicate<Class<?>> coreClassesMatching(ForkCoreClasses config) {
+    checkArgument(config.packages().length > 0 || config.types().length > 0,
+        "@ForkCoreClasses must specify packages or types");
+    List<String> packages = Arrays.asList(config.packages());
+    List<Class<?>> types = Arrays.asList(config.types());
+    return cls -> {
+      if (cls.isInterface()) {
+        return false;
+      }
+      String name = cls.getName();
+      String pkg = name.substring(0, Math.max(name.lastIndexOf('.'), 0));
+      boolean inPackage = packages.isEmpty() || packages.stream().anyMatch(pattern -> pattern.endsWith(".*")
+          ? (pkg + ".").startsWith(pattern.substring(0, pattern.length() - 1))
+          : pkg.equals(pattern));
+      boolean isType = types.isEmpty() || types.stream().anyMatch(type -> type.isAssignableFrom(cls));
+      return inPackage && isType;
+    };
+  }
+
   private static ClassLoader getClassLoader(TestClass testClass) {
     FrameworkMethod classLoaderMethod = getOnlyElement(testClass.getAnnotatedMethods(BenchmarkClassLoader.class), null);
     if (classLoaderMethod == null) {
@@ -192,19 +498,117 @@ public class BenchmarkRunner extends ParentRunner<Runner> {
   private static List<Runner> configuredBenchmarks(
       TestClass testClass,
       List<FrameworkMethod> methods,
-      FrameworkField configurationsField) throws IllegalAccessException, InitializationError {
-    List<?> configurations = (List<?>) configurationsField.get(null);
+      FrameworkField configurationsField,
+      List<?> configurations,
+      BenchmarkCompiler.Batch hotLoops,
+      Map<String, String> configurationOverrides) throws InitializationError {
+    List<Runner> benchmarks = new ArrayList<>();
+    for (FrameworkMethod method : methods) {
+      SearchForCliffs search = searchForCliffs(method);
+      if (search != null) {
+        benchmarks.add(cliffSearch(
+            testClass, method, configurationsField, configurations, search, hotLoops, configurationOverrides));
+      } else {
+        benchmarks.add(new ParameterisedMethodBenchmark(
+            testClass, method, configurationsField, configurations, hotLoops, configurationOverrides));
+      }
+    }
+    return benchmarks;
+  }
+
+  private static SearchForCliffs searchForCliffs(FrameworkMethod method) {
+    return Stream.of(
+            method.getAnnotation(SearchForCliffs.class),
+            method.getDeclaringClass().getAnnotation(SearchForCliffs.class))
+        .filter(obj -> obj != null)
+        .findFirst()
+        .orElse(null);
+  }
+
+  private static boolean operationsFromConfiguration(FrameworkMethod method) {
+    return Stream.of(
+            method.getAnnotation(OperationsPerInvocation.class),
+            method.getDeclaringClass().getAnnotation(OperationsPerInvocation.class))
+        .filter(obj -> obj != null)
+        .findFirst()
+        .map(OperationsPerInvocation::fromConfiguration)
+        .orElse(false);
+  }
+
+  private static CliffSearch cliffSearch(
+      TestClass testClass,
+      FrameworkMethod method,
+      FrameworkField configurationsField,
+      List<?> configurations,
+      SearchForCliffs search,
+      BenchmarkCompiler.Batch hotLoops,
+      Map<String, String> configurationOverrides) {
+    checkArgument(search.tolerance() > 0, "@SearchForCliffs tolerance must be positive");
+    checkArgument(Stream.of(method.getAnnotation(JvmArgs.class), testClass.getAnnotation(JvmArgs.class))
+            .allMatch(annotation -> annotation == null),
+        "@SearchForCliffs cannot be combined with @JvmArgs, as cliffs are found in this JVM");
+    checkArgument(!configurations.isEmpty(), "@SearchForCliffs needs at least one configuration");
+    Class<?> type = configurations.get(0).getClass();
+    checkArgument(Stream.of(Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class)
+            .anyMatch(type::equals)
+            && configurations.stream().allMatch(type::isInstance),
+        "@SearchForCliffs needs Byte, Short, Integer, Long, Float or Double configurations, all of the same type");
+    List<SingleBenchmark> benchmarks = IntStream.range(0, configurations.size())
+        .mapToObj(index -> ParameterisedMethodBenchmark.singleBenchmark(
+            testClass, method, configurationsField, configurations, index, hotLoops, configurationOverrides))
+        .collect(toList());
+    Function<Number, SingleBenchmark> benchmarkAt = value -> {
+      Function<ClassLoader, LongUnaryOperator> hotLoop = new BenchmarkCompiler.Batch().addWithValues(
+          testClass.getJavaClass(),
+          method.getMethod(),
+          ImmutableList.of(value),
+          hotLoopOptions(method),
+          forkingClasses(method),
+          forkingCoreClasses(method));
+      Description description = createSingleBenchmarkDescription(testClass, method, value);
+      return new SingleBenchmark(
+          description, () -> hotLoop.apply(getClassLoader(testClass)), value, configurationOverrides);
+    };
+    Benchmark benchmark = method.getAnnotation(Benchmark.class);
+    String title = benchmark.value().isEmpty() ? method.getName() : benchmark.value();
+    @SuppressWarnings("unchecked")
+    List<? extends Number> values = (List<? extends Number>) configurations;
+    return new CliffSearch(
+        testClass.getName() + "#" + method.getName(), title, search, values, benchmarks, benchmarkAt);
+  }
+
+  private static List<Runner> gridBenchmarks(
+      TestClass testClass,
+      List<FrameworkMethod> methods,
+      ConfigurationGrid grid,
+      BenchmarkCompiler.Batch hotLoops,
+      Map<String, String> configurationOverrides) throws InitializationError {
     List<Runner> benchmarks = new ArrayList<>();
     for (FrameworkMethod method : methods) {
-      benchmarks.add(new ParameterisedMethodBenchmark(
-          testClass, method, configurationsField, configurations));
+      checkArgument(searchForCliffs(method) == null,
+          "@SearchForCliffs %s needs a single @Configuration field", method.getName());
+      checkArgument(!operationsFromConfiguration(method),
+          "@OperationsPerInvocation(fromConfiguration = true) %s needs a single @Configuration field",
+          method.getName());
+      benchmarks.add(new ParameterisedMethodBenchmark(testClass, method, grid, hotLoops, configurationOverrides));
     }
     return benchmarks;
   }
 
   public BenchmarkRunner(Class<?> testClass) throws InitializationError {
+    this(testClass, method -> true, ImmutableMap.of());
+  }
+
+  /**
+   * Creates a runner for the benchmark methods matching {@code methodFilter}, replacing the {@link Configuration}
+   * lists named in {@code configurationOverrides} with the comma-separated values given.
+   */
+  BenchmarkRunner(
+      Class<?> testClass,
+      Predicate<Method> methodFilter,
+      Map<String, String> configurationOverrides) throws InitializationError {
     super(testClass);
-    benchmarks = getBenchmarks(getTestClass());
+    benchmarks = getBenchmarks(getTestClass(), methodFilter, configurationOverrides);
   }
 
   @Override
@@ -224,9 +628,45 @@ public class BenchmarkRunner extends ParentRunner<Runner> {
     monitor.stop();
     monitor.printIfChanged(new PrintStream(new ByteArrayOutputStream()));
 
+    Environment.instance().printOnce();
+    leaves(getDescription())
+        .filter(description -> description.getAnnotation(JvmArgs.class) == null || JvmArgsSweep.isForked())
+        .map(description -> BenchmarkCompiler.HotLoopOptions.of(description.getAnnotation(HotLoop.class)))
+        .distinct()
+        .forEach(options -> Calibration.forHotLoop(options).printOnce());
+    try {
+      MeasurementSettings.instance().printOverridesOnce();
+    } catch (IllegalArgumentException e) {
+      // Reported as a failure of each benchmark
+    }
     super.run(notifier);
   }
 
+  /**
+   * Returns the individual benchmarks under {@code description}.
+   */
+  static Stream<Description> leaves(Description description) {
+    return description.isTest()
+        ? Stream.of(description)
+        : description.getChildren().stream().flatMap(BenchmarkRunner::leaves);
+  }
+
+  /**
+   * Returns the individual benchmarks run by {@code runner}, including any added by a {@link CliffSearch}.
+   */
+  static Stream<SingleBenchmark> singleBenchmarks(Runner runner) {
+    if (runner instanceof SingleBenchmark) {
+      return Stream.of((SingleBenchmark) runner);
+    } else if (runner instanceof BenchmarkRunner) {
+      return ((BenchmarkRunner) runner).getChildren().stream().flatMap(BenchmarkRunner::singleBenchmarks);
+    } else if (runner instanceof ParameterisedMethodBenchmark) {
+      return ((ParameterisedMethodBenchmark) runner).getChildren().stream();
+    } else if (runner instanceof CliffSearch) {
+      return ((CliffSearch) runner).benchmarks().stream();
+    }
+    return Stream.empty();
+  }
+
   @Override
   protected void runChild(Runner benchmark, RunNotifier notifier) {
     benchmark.run(notifier);
@@ -234,42 +674,86 @@ public class BenchmarkRunner extends ParentRunner<Runner> {
 
   static class ParameterisedMethodBenchmark extends ParentRunner<SingleBenchmark> {
     private final FrameworkMethod method;
+    private final ConfigurationGrid grid;
     private final List<SingleBenchmark> flavours;
 
     ParameterisedMethodBenchmark(
         TestClass testClass,
         FrameworkMethod method,
         FrameworkField configurationsField,
-        List<?> configurations) throws InitializationError {
+        List<?> configurations,
+        BenchmarkCompiler.Batch hotLoops,
+        Map<String, String> configurationOverrides) throws InitializationError {
       super(testClass.getJavaClass());
       this.method = method;
+      this.grid = null;
       this.flavours = IntStream.iterate(0, i -> ++i)
           .limit(configurations.size())
-          .mapToObj(index -> singleBenchmark(testClass, method, configurationsField, configurations, index))
+          .mapToObj(index -> singleBenchmark(
+              testClass, method, configurationsField, configurations, index, hotLoops, configurationOverrides))
           .sorted()
           .collect(toList());
     }
 
+    ParameterisedMethodBenchmark(
+        TestClass testClass,
+        FrameworkMethod method,
+        ConfigurationGrid grid,
+        BenchmarkCompiler.Batch hotLoops,
+        Map<String, String> configurationOverrides) throws InitializationError {
+      super(testClass.getJavaClass());
+      this.method = method;
+      this.grid = grid;
+      this.flavours = grid.points()
+          .stream()
+          .map(point -> singleBenchmark(testClass, method, grid, point, hotLoops, configurationOverrides))
+          .collect(toList());
+    }
+
+    private static SingleBenchmark singleBenchmark(
+        TestClass testClass,
+        FrameworkMethod method,
+        ConfigurationGrid grid,
+        ConfigurationGrid.Point point,
+        BenchmarkCompiler.Batch hotLoops,
+        Map<String, String> configurationOverrides) {
+      Description description = createSingleBenchmarkDescription(testClass, method, point);
+      Function<ClassLoader, LongUnaryOperator> hotLoop = hotLoops.add(
+          testClass.getJavaClass(),
+          method.getMethod(),
+          grid.fields(),
+          point.indices(),
+          hotLoopOptions(method),
+          forkingClasses(method),
+          forkingCoreClasses(method));
+      Supplier<LongUnaryOperator> hotLoopFactory = () -> hotLoop.apply(getClassLoader(testClass));
+      return new SingleBenchmark(description, hotLoopFactory, point, configurationOverrides);
+    }
+
     private static SingleBenchmark singleBenchmark(
         TestClass testClass,
         FrameworkMethod method,
         FrameworkField configurationsField,
         List<?> configurations,
-        int index) {
+        int index,
+        BenchmarkCompiler.Batch hotLoops,
+        Map<String, String> configurationOverrides) {
       Object configuration = configurations.get(index);
       Description description = createSingleBenchmarkDescription(testClass, method, configuration);
-      Supplier<LongUnaryOperator> hotLoopFactory = () -> BenchmarkCompiler.compileBenchmark(
-          getClassLoader(testClass),
+      Function<ClassLoader, LongUnaryOperator> hotLoop = hotLoops.add(
           testClass.getJavaClass(),
           method.getMethod(),
-          configurationsField.getField(),
-          index,
+          ImmutableList.of(configurationsField.getField()),
+          new int[] { index },
+          hotLoopOptions(method),
           forkingClasses(method),
-          BenchmarkRunner::isCoreCollection);
+          forkingCoreClasses(method));
+      Supplier<LongUnaryOperator> hotLoopFactory = () -> hotLoop.apply(getClassLoader(testClass));
       return new SingleBenchmark(
           description,
           hotLoopFactory,
-          configurations.get(index));
+          configurations.get(index),
+          configurationOverrides);
     }
 
     @Override
@@ -287,8 +771,12 @@ public class BenchmarkRunner extends ParentRunner<Runner> {
         System.out.println(" ** " + interferenceWarning.value() + " **");
         System.out.println("    Run in isolation for trustworthy results");
       }
-      if (!EdenMonitor.isAvailable()) {
-        System.out.println("[WARN] Not using Parallel Sweep GC; memory allocation information will not be available");
+      if (grid != null) {
+        System.out.println(grid.header());
+      }
+      if (!AllocationMonitor.isAvailable()) {
+        System.out.println("[WARN] No per-thread allocation counters or Parallel Sweep GC; "
+            + "memory allocation information will not be available");
       }
       super.run(notifier);
       System.out.println();
@@ -0,0 +1,150 @@
+package org.alicep.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongUnaryOperator;
+
+import org.alicep.benchmark.BenchmarkCompiler.HotLoopOptions;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The cost of the runner's own measurements, calibrated once per JVM: the latency and granularity of
+ * {@link System#nanoTime()}, and the time per call of a hot loop around an empty benchmark, compiled the same way as
+ * every other hot loop with the same {@link HotLoopOptions}.
+ *
+ * <p>Results are corrected by the loop's cost, and results no slower than an empty loop are flagged as at the
+ * measurement floor, rather than reported as if they were meaningful. Set the {@code benchmark.calibrate} system
+ * property to {@code false} to skip calibration.
+ */
+class Calibration {
+
+  private static final boolean ENABLED = !"false".equals(System.getProperty("benchmark.calibrate"));
+  private static final int TIMER_CALLS = 1_000_000;
+  private static final int GRANULARITY_ATTEMPTS = 1_000;
+  private static final long SAMPLE_NANOS = 10_000_000;
+  private static final int WARMUP_SAMPLES = 10;
+  private static final int SAMPLES = 30;
+
+  private static final Map<HotLoopOptions, Calibration> CALIBRATIONS = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the calibration for hot loops generated with {@code options}, measuring it the first time this is called.
+   */
+  static Calibration forHotLoop(HotLoopOptions options) {
+    return CALIBRATIONS.computeIfAbsent(options, unmeasured -> ENABLED
+        ? measure(options)
+        : new Calibration(options, 0, 0, new Statistics.Interval(0, 0, 0)));
+  }
+
+  private final HotLoopOptions options;
+  private final double timerLatencyNanos;
+  private final double timerGranularityNanos;
+  private final Statistics.Interval emptyLoopNanos;
+  private final AtomicBoolean printed = new AtomicBoolean();
+
+  Calibration(
+      HotLoopOptions options,
+      double timerLatencyNanos,
+      double timerGranularityNanos,
+      Statistics.Interval emptyLoopNanos) {
+    this.options = options;
+    this.timerLatencyNanos = timerLatencyNanos;
+    this.timerGranularityNanos = timerGranularityNanos;
+    this.emptyLoopNanos = emptyLoopNanos;
+  }
+
+  /**
+   * Returns the mean cost of a call to {@link System#nanoTime()}.
+   */
+  double timerLatencyNanos() {
+    return timerLatencyNanos;
+  }
+
+  /**
+   * Returns the time per call of the hot loop, less the time per call of an empty benchmark's hot loop, unless the
+   * result is within {@link #floorNanos()}, when it is returned unchanged.
+   */
+  Statistics.Interval correct(Statistics.Interval perCall) {
+    if (isAtFloor(perCall.estimate)) {
+      return perCall;
+    }
+    double overhead = emptyLoopNanos.estimate;
+    return new Statistics.Interval(
+        perCall.estimate - overhead,
+        Math.max(perCall.lower - overhead, 0),
+        perCall.upper - overhead);
+  }
+
+  /**
+   * Returns whether a measured time per call is indistinguishable from an empty benchmark's.
+   */
+  boolean isAtFloor(double perCallNanos) {
+    return ENABLED && perCallNanos <= floorNanos();
+  }
+
+  /**
+   * Returns the slowest an empty benchmark's hot loop plausibly runs, per call: the upper end of its confidence
+   * interval.
+   */
+  double floorNanos() {
+    return emptyLoopNanos.upper;
+  }
+
+  /**
+   * Prints the calibration, the first time it is called.
+   */
+  void printOnce() {
+    if (ENABLED && printed.compareAndSet(false, true)) {
+      System.out.println("Calibration: System.nanoTime() takes " + Nanos.formatNanos(timerLatencyNanos)
+          + " with " + Nanos.formatNanos(timerGranularityNanos) + " granularity; an empty hot loop"
+          + (options.equals(HotLoopOptions.DEFAULT) ? "" : " (" + options + ")") + " takes "
+          + Nanos.formatNanos(emptyLoopNanos.estimate) + " per call, subtracted from results");
+      System.out.println();
+    }
+  }
+
+  private static Calibration measure(HotLoopOptions options) {
+    long start = System.nanoTime();
+    for (int i = 0; i < TIMER_CALLS; i++) {
+      System.nanoTime();
+    }
+    double timerLatencyNanos = (double) (System.nanoTime() - start) / (TIMER_CALLS + 1);
+
+    long granularity = Long.MAX_VALUE;
+    for (int i = 0; i < GRANULARITY_ATTEMPTS; i++) {
+      long first = System.nanoTime();
+      long next;
+      do {
+        next = System.nanoTime();
+      } while (next == first);
+      granularity = Math.min(granularity, next - first);
+    }
+
+    try {
+      LongUnaryOperator hotLoop = new BenchmarkCompiler.Batch()
+          .add(Baseline.class, Baseline.class.getMethod("nothing"), ImmutableList.of(), new int[0], options, false)
+          .apply(Calibration.class.getClassLoader());
+      long iterations = 1;
+      int warmups = 0;
+      double[] timings = new double[SAMPLES];
+      int samples = 0;
+      while (samples < SAMPLES) {
+        long elapsed = hotLoop.applyAsLong(iterations);
+        if (elapsed < SAMPLE_NANOS) {
+          iterations = iterations + (iterations >> 1) + 1;
+        } else if (warmups < WARMUP_SAMPLES) {
+          warmups++;
+        } else {
+          timings[samples++] = (double) elapsed / iterations;
+        }
+      }
+      Statistics.Interval emptyLoopNanos =
+          Statistics.bootstrap(timings, samples, Statistics::median, Statistics.CONFIDENCE_99_PERCENT);
+      return new Calibration(options, timerLatencyNanos, granularity, emptyLoopNanos);
+    } catch (NoSuchMethodException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package org.alicep.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import net.bytebuddy.ByteBuddy;
+
+/**
+ * Optional on-disk cache of generated and forked class bytes, so unchanged benchmarks skip javac and bytecode
+ * rewriting on later runs.
+ *
+ * <p>Enabled by setting the {@value #PROPERTY} system property to a directory, or to {@code true} for
+ * {@value #DEFAULT_DIRECTORY}. Entries are named by a hash of everything that determines their content, so are never
+ * stale; delete the directory to reclaim space. Any I/O failure disables the cache for the rest of the run.
+ */
+class ClassCache {
+
+  static final String PROPERTY = "benchmark.cache";
+  static final String DEFAULT_DIRECTORY = "build/benchmark-cache";
+
+  /**
+   * Bump whenever generated or forked bytecode changes for the same inputs.
+   */
+  private static final int FORMAT = 2;
+
+  private static final ClassCache INSTANCE = new ClassCache(directory(System.getProperty(PROPERTY)));
+
+  static ClassCache instance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Starts a cache key for an entry of the given kind, covering the cache format and the JVM and ByteBuddy versions.
+   */
+  static Hasher newKey(String kind) {
+    return Hashing.sha256().newHasher()
+        .putInt(FORMAT)
+        .putString(kind, UTF_8)
+        .putString(System.getProperty("java.version"), UTF_8)
+        .putString(String.valueOf(ByteBuddy.class.getPackage().getImplementationVersion()), UTF_8);
+  }
+
+  /**
+   * Returns the bytecode of {@code className} as found by {@code classLoader}, or null if it is not available.
+   */
+  static byte[] classBytes(ClassLoader classLoader, String className) {
+    try (InputStream in = classLoader.getResourceAsStream(className.replace('.', '/') + ".class")) {
+      return (in == null) ? null : ByteStreams.toByteArray(in);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private final Path directory;
+  private final AtomicBoolean failed = new AtomicBoolean();
+
+  private ClassCache(Path directory) {
+    this.directory = directory;
+  }
+
+  boolean isEnabled() {
+    return directory != null && !failed.get();
+  }
+
+  /**
+   * Returns the cached bytes for {@code key}, memory-mapped read-only, or null if there are none.
+   */
+  ByteBuffer get(HashCode key) {
+    if (!isEnabled()) {
+      return null;
+    }
+    try (FileChannel file = FileChannel.open(path(key), StandardOpenOption.READ)) {
+      return file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      disable(e);
+      return null;
+    }
+  }
+
+  /**
+   * Stores {@code bytes} under {@code key}. Writes are atomic, so concurrent runs never see partial entries.
+   */
+  void put(HashCode key, ByteBuffer bytes) {
+    if (!isEnabled()) {
+      return;
+    }
+    try {
+      Files.createDirectories(directory);
+      Path temp = Files.createTempFile(directory, key.toString(), ".tmp");
+      try (FileChannel file = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        ByteBuffer remaining = bytes.duplicate();
+        while (remaining.hasRemaining()) {
+          file.write(remaining);
+        }
+      }
+      Files.move(temp, path(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      disable(e);
+    }
+  }
+
+  /**
+   * Returns the cached bytes for {@code key}, else computes and stores them.
+   */
+  ByteBuffer computeIfAbsent(HashCode key, Supplier<byte[]> bytes) {
+    ByteBuffer cached = get(key);
+    if (cached != null) {
+      return cached;
+    }
+    ByteBuffer computed = ByteBuffer.wrap(bytes.get());
+    put(key, computed);
+    return computed;
+  }
+
+  private Path path(HashCode key) {
+    return directory.resolve(key + ".class");
+  }
+
+  private void disable(IOException e) {
+    if (!failed.getAndSet(true)) {
+      System.out.println("[WARN] Benchmark cache disabled: " + e);
+    }
+  }
+
+  private static Path directory(String property) {
+    if (property == null || property.isEmpty() || property.equalsIgnoreCase("false")) {
+      return null;
+    } else if (property.equalsIgnoreCase("true")) {
+      return Paths.get(DEFAULT_DIRECTORY);
+    } else {
+      return Paths.get(property);
+    }
+  }
+}
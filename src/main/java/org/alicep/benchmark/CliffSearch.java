@@ -0,0 +1,273 @@
+package org.alicep.benchmark;
+
+import static java.util.Comparator.comparingDouble;
+import static java.util.stream.Collectors.joining;
+import static org.alicep.benchmark.Bytes.bytes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.alicep.benchmark.BenchmarkRunner.SearchForCliffs;
+import org.junit.runner.Description;
+import org.junit.runner.Runner;
+import org.junit.runner.notification.RunNotifier;
+
+/**
+ * Benchmarks a method over a numeric configuration, then repeatedly benchmarks the point between the adjacent pair of
+ * values whose time or memory per element differ most, until every remaining jump is either within tolerance or
+ * between values that cannot be split further.
+ *
+ * <p>Cost is normalized by the configuration value when it is positive, so a linear curve has no jumps; a cliff, say
+ * where a working set stops fitting in cache, is located to the nearest integer in a logarithmic number of benchmarks.
+ */
+class CliffSearch extends Runner {
+
+  private static final double MIN_FLOATING_POINT_WIDTH = 0.01;
+
+  static class Point {
+    final Number value;
+    final SingleBenchmark benchmark;
+
+    Point(Number value, SingleBenchmark benchmark) {
+      this.value = value;
+      this.benchmark = benchmark;
+    }
+
+    double timePerElement() {
+      return benchmark.meanNanos() / scale();
+    }
+
+    double timeErrorPerElement() {
+      return benchmark.errorNanos() / scale();
+    }
+
+    double memoryPerElement() {
+      return (benchmark.allocatedBytes() < 0) ? Double.NaN : benchmark.allocatedBytes() / scale();
+    }
+
+    private double scale() {
+      return (value.doubleValue() > 0) ? value.doubleValue() : 1;
+    }
+  }
+
+  private final Description description;
+  private final String title;
+  private final SearchForCliffs settings;
+  private final List<Point> initial = new ArrayList<>();
+  private final Function<Number, SingleBenchmark> benchmarkAt;
+  private final List<SingleBenchmark> measured = new ArrayList<>();
+
+  CliffSearch(
+      String name,
+      String title,
+      SearchForCliffs settings,
+      List<? extends Number> values,
+      List<SingleBenchmark> benchmarks,
+      Function<Number, SingleBenchmark> benchmarkAt) {
+    this.description = Description.createSuiteDescription(name);
+    this.title = title;
+    this.settings = settings;
+    this.benchmarkAt = benchmarkAt;
+    for (int i = 0; i < values.size(); i++) {
+      initial.add(new Point(values.get(i), benchmarks.get(i)));
+      description.addChild(benchmarks.get(i).getDescription());
+    }
+    initial.sort(comparingDouble(point -> point.value.doubleValue()));
+  }
+
+  @Override
+  public Description getDescription() {
+    return description;
+  }
+
+  /**
+   * Returns the benchmarks run so far, in order.
+   */
+  List<SingleBenchmark> benchmarks() {
+    return measured;
+  }
+
+  @Override
+  public void run(RunNotifier notifier) {
+    System.out.println(title);
+    System.out.println(Stream.generate(() -> "-").limit(title.length()).collect(joining()));
+    if (!AllocationMonitor.isAvailable()) {
+      System.out.println("[WARN] No per-thread allocation counters or Parallel Sweep GC; "
+          + "memory allocation information will not be available");
+    }
+    List<Point> points = new ArrayList<>();
+    for (Point point : initial) {
+      if (!measure(point, notifier)) {
+        System.out.println();
+        return;
+      }
+      points.add(point);
+    }
+
+    int benchmarks = points.size();
+    List<Point> outliers = new ArrayList<>();
+    while (benchmarks < settings.maxBenchmarks()) {
+      removeOutliers(points, outliers, settings.tolerance());
+      int widest = -1;
+      double widestJump = settings.tolerance();
+      for (int i = 0; i + 1 < points.size(); i++) {
+        double jump = jump(points.get(i), points.get(i + 1));
+        if (jump > widestJump && isSplittable(points.get(i).value, points.get(i + 1).value)) {
+          widest = i;
+          widestJump = jump;
+        }
+      }
+      if (widest < 0) {
+        break;
+      }
+      Number value = midpoint(points.get(widest).value, points.get(widest + 1).value);
+      SingleBenchmark benchmark = benchmarkAt.apply(value);
+      description.addChild(benchmark.getDescription());
+      Point point = new Point(value, benchmark);
+      benchmarks++;
+      if (!measure(point, notifier)) {
+        System.out.println();
+        return;
+      }
+      points.add(widest + 1, point);
+    }
+
+    removeOutliers(points, outliers, settings.tolerance());
+    printCliffs(points, outliers, benchmarks);
+    System.out.println();
+  }
+
+  /**
+   * Moves any point that differs from both its neighbours, when they agree with each other, to {@code outliers}, so a
+   * single mismeasured benchmark is not mistaken for a pair of cliffs.
+   */
+  static void removeOutliers(List<Point> points, List<Point> outliers, double tolerance) {
+    for (int i = 1; i + 1 < points.size(); i++) {
+      Point previous = points.get(i - 1);
+      Point next = points.get(i + 1);
+      if (jump(previous, next) <= tolerance
+          && jump(previous, points.get(i)) > tolerance
+          && jump(points.get(i), next) > tolerance) {
+        outliers.add(points.remove(i));
+        // Check the point that moved into position i against its new neighbours
+        i--;
+      }
+    }
+  }
+
+  private boolean measure(Point point, RunNotifier notifier) {
+    measured.add(point.benchmark);
+    point.benchmark.run(notifier);
+    if (Double.isNaN(point.benchmark.meanNanos())) {
+      System.out.println("  * Search abandoned after a failed benchmark");
+      return false;
+    }
+    return true;
+  }
+
+  private void printCliffs(List<Point> points, List<Point> outliers, int benchmarks) {
+    boolean found = false;
+    for (int i = 0; i + 1 < points.size(); i++) {
+      Point a = points.get(i);
+      Point b = points.get(i + 1);
+      if (jump(a, b) <= settings.tolerance()) {
+        continue;
+      }
+      found = true;
+      List<String> changes = new ArrayList<>();
+      if (timeJump(a, b) > settings.tolerance()) {
+        changes.add(Nanos.formatNanos(a.timePerElement()) + " → " + Nanos.formatNanos(b.timePerElement())
+            + String.format(" (%+.0f%%)", 100 * (b.timePerElement() / a.timePerElement() - 1)));
+      }
+      if (memoryJump(a, b) > settings.tolerance()) {
+        changes.add(bytes(Math.round(a.memoryPerElement())) + " → " + bytes(Math.round(b.memoryPerElement())));
+      }
+      String unresolved = isSplittable(a.value, b.value) ? " (unresolved)" : "";
+      System.out.println("  * Cliff between " + a.value + " and " + b.value + unresolved + ": "
+          + String.join(", ", changes) + " per element");
+    }
+    if (!found) {
+      System.out.println("  * No cliffs found");
+    }
+    if (!outliers.isEmpty()) {
+      System.out.println("  * Ignored outlying results at "
+          + outliers.stream().map(point -> String.valueOf(point.value)).collect(joining(", ")));
+    }
+    Number first = points.get(0).value;
+    Number last = points.get(points.size() - 1).value;
+    if (isIntegral(first)) {
+      System.out.println("  * " + benchmarks + " benchmarks vs "
+          + (last.longValue() - first.longValue() + 1) + " for a dense sweep");
+    }
+  }
+
+  private static double jump(Point a, Point b) {
+    return Math.max(timeJump(a, b), memoryJump(a, b));
+  }
+
+  /**
+   * Returns the relative change in time per element, or zero if within the points' combined confidence intervals.
+   */
+  private static double timeJump(Point a, Point b) {
+    double difference = Math.abs(a.timePerElement() - b.timePerElement());
+    if (difference <= a.timeErrorPerElement() + b.timeErrorPerElement()) {
+      return 0;
+    }
+    return relativeChange(a.timePerElement(), b.timePerElement());
+  }
+
+  private static double memoryJump(Point a, Point b) {
+    if (Double.isNaN(a.memoryPerElement()) || Double.isNaN(b.memoryPerElement())) {
+      return 0;
+    }
+    return relativeChange(a.memoryPerElement(), b.memoryPerElement());
+  }
+
+  private static double relativeChange(double a, double b) {
+    double max = Math.max(Math.abs(a), Math.abs(b));
+    return (max == 0) ? 0 : Math.abs(a - b) / max;
+  }
+
+  private static boolean isIntegral(Number value) {
+    return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+  }
+
+  /**
+   * Returns whether there is a value between {@code a} and {@code b} worth benchmarking: an integer strictly between
+   * them, or a floating-point value more than {@value #MIN_FLOATING_POINT_WIDTH} of their magnitude away from both.
+   */
+  static boolean isSplittable(Number a, Number b) {
+    if (isIntegral(a)) {
+      return b.longValue() - a.longValue() > 1;
+    }
+    double width = b.doubleValue() - a.doubleValue();
+    return width >= MIN_FLOATING_POINT_WIDTH * Math.max(Math.abs(a.doubleValue()), Math.abs(b.doubleValue()));
+  }
+
+  /**
+   * Returns a value strictly between {@code a} and {@code b}, of the same type: the geometric mean if both are
+   * positive, as cliffs are usually sought over exponentially-spaced sizes, otherwise the arithmetic mean.
+   */
+  static Number midpoint(Number a, Number b) {
+    double lower = a.doubleValue();
+    double upper = b.doubleValue();
+    double mid = (lower > 0) ? Math.sqrt(lower * upper) : lower + (upper - lower) / 2;
+    if (isIntegral(a)) {
+      long value = Math.max(a.longValue() + 1, Math.min(b.longValue() - 1, Math.round(mid)));
+      if (a instanceof Integer) {
+        return (int) value;
+      } else if (a instanceof Short) {
+        return (short) value;
+      } else if (a instanceof Byte) {
+        return (byte) value;
+      }
+      return value;
+    } else if (a instanceof Float) {
+      return (float) mid;
+    } else {
+      return mid;
+    }
+  }
+}
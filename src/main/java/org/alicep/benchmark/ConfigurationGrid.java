@@ -0,0 +1,235 @@
+package org.alicep.benchmark;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.reflect.Modifier.isStatic;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.alicep.benchmark.BenchmarkRunner.Configuration;
+import org.alicep.benchmark.BenchmarkRunner.ConfigurationFilter;
+import org.junit.runners.model.FrameworkField;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.TestClass;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Primitives;
+
+import net.bytebuddy.description.field.FieldDescription;
+import net.bytebuddy.dynamic.ClassFileLocator;
+import net.bytebuddy.pool.TypePool;
+
+/**
+ * The cartesian product of a benchmark class's {@link Configuration} lists, one dimension per field in declaration
+ * order (superclass fields first), less any points its {@link ConfigurationFilter} rejects.
+ */
+class ConfigurationGrid {
+
+  private static final List<Class<?>> NUMERIC_WIDENING =
+      ImmutableList.of(byte.class, short.class, int.class, long.class, float.class, double.class);
+
+  /**
+   * A point in the grid, identified by its index into each dimension.
+   */
+  static class Point {
+    private final ConfigurationGrid grid;
+    private final int[] indices;
+    private final List<Object> values;
+
+    private Point(ConfigurationGrid grid, int[] indices) {
+      this.grid = grid;
+      this.indices = indices;
+      this.values = IntStream.range(0, indices.length)
+          .mapToObj(i -> grid.dimensions.get(i).get(indices[i]))
+          .collect(toList());
+    }
+
+    int[] indices() {
+      return indices.clone();
+    }
+
+    /**
+     * Returns the point's coordinates as a table row, aligned with {@link ConfigurationGrid#header()}.
+     */
+    String row() {
+      return IntStream.range(0, indices.length)
+          .mapToObj(i -> pad(String.valueOf(values.get(i)), grid.widths[i]))
+          .collect(joining("  "));
+    }
+
+    @Override
+    public String toString() {
+      return IntStream.range(0, indices.length)
+          .mapToObj(i -> grid.fields.get(i).getName() + "=" + values.get(i))
+          .collect(joining(", "));
+    }
+  }
+
+  /**
+   * Returns the grid of configurations for {@code testClass}, taking a field's values from {@code overrides} in place
+   * of its own list, if present.
+   */
+  static ConfigurationGrid of(TestClass testClass, Map<Field, List<?>> overrides) throws IllegalAccessException {
+    // Superclass fields first, then each class's in declaration order
+    List<Class<?>> hierarchy = new ArrayList<>();
+    for (Class<?> cls = testClass.getJavaClass(); cls != null; cls = cls.getSuperclass()) {
+      hierarchy.add(0, cls);
+    }
+    Map<Class<?>, List<String>> declarationOrders = new HashMap<>();
+    List<Field> fields = testClass.getAnnotatedFields(Configuration.class)
+        .stream()
+        .map(FrameworkField::getField)
+        .sorted(Comparator
+            .comparing((Field field) -> hierarchy.indexOf(field.getDeclaringClass()))
+            .thenComparing(field -> declarationOrders
+                .computeIfAbsent(field.getDeclaringClass(), ConfigurationGrid::declarationOrder)
+                .indexOf(field.getName())))
+        .collect(toList());
+    List<List<?>> dimensions = new ArrayList<>();
+    for (Field field : fields) {
+      checkArgument(isStatic(field.getModifiers()), "@Configuration field %s must be static", field.getName());
+      dimensions.add(overrides.containsKey(field) ? overrides.get(field) : (List<?>) field.get(null));
+    }
+    List<FrameworkMethod> filters = testClass.getAnnotatedMethods(ConfigurationFilter.class);
+    checkArgument(filters.size() <= 1, "Only one @ConfigurationFilter method is allowed");
+    Method filter = filters.isEmpty() ? null : filters.get(0).getMethod();
+    if (filter != null) {
+      checkArgument(isStatic(filter.getModifiers()), "@ConfigurationFilter %s must be static", filter.getName());
+      checkArgument(filter.getReturnType() == boolean.class || filter.getReturnType() == Boolean.class,
+          "@ConfigurationFilter %s must return boolean", filter.getName());
+      checkArgument(filter.getParameterCount() == fields.size(),
+          "@ConfigurationFilter %s must take one parameter per @Configuration field", filter.getName());
+      for (int i = 0; i < fields.size(); i++) {
+        Class<?> parameter = filter.getParameterTypes()[i];
+        for (Object value : dimensions.get(i)) {
+          checkArgument(canPass(parameter, value),
+              "@ConfigurationFilter %s parameter %s cannot take @Configuration %s value %s",
+              filter.getName(), i + 1, fields.get(i).getName(), value);
+        }
+      }
+      filter.setAccessible(true);
+    }
+    return new ConfigurationGrid(fields, dimensions, filter);
+  }
+
+  private final List<Field> fields;
+  private final List<List<?>> dimensions;
+  private final List<Point> points;
+  private final int[] widths;
+
+  private ConfigurationGrid(List<Field> fields, List<List<?>> dimensions, Method filter) {
+    this.fields = ImmutableList.copyOf(fields);
+    this.dimensions = ImmutableList.copyOf(dimensions);
+    this.widths = IntStream.range(0, fields.size())
+        .map(i -> Math.max(
+            fields.get(i).getName().length(),
+            dimensions.get(i).stream().mapToInt(value -> String.valueOf(value).length()).max().orElse(0)))
+        .toArray();
+    List<Point> points = new ArrayList<>();
+    addPoints(new int[fields.size()], 0, filter, points);
+    this.points = ImmutableList.copyOf(points);
+  }
+
+  /**
+   * Returns the {@link Configuration} fields, in declaration order, superclass fields first.
+   */
+  List<Field> fields() {
+    return fields;
+  }
+
+  /**
+   * Returns the accepted points, varying the last dimension fastest.
+   */
+  List<Point> points() {
+    return points;
+  }
+
+  /**
+   * Returns the dimension names, as a table header aligned with {@link Point#row()}.
+   */
+  String header() {
+    return IntStream.range(0, fields.size())
+        .mapToObj(i -> pad(fields.get(i).getName(), widths[i]))
+        .collect(joining("  "))
+        .trim();
+  }
+
+  private void addPoints(int[] indices, int dimension, Method filter, List<Point> points) {
+    if (dimension == indices.length) {
+      Point point = new Point(this, indices.clone());
+      if (filter == null || accepts(filter, point)) {
+        points.add(point);
+      }
+      return;
+    }
+    for (int i = 0; i < dimensions.get(dimension).size(); i++) {
+      indices[dimension] = i;
+      addPoints(indices, dimension + 1, filter, points);
+    }
+  }
+
+  private static boolean accepts(Method filter, Point point) {
+    try {
+      return (Boolean) filter.invoke(null, point.values.toArray());
+    } catch (IllegalAccessException e) {
+      throw new AssertionError(e);
+    } catch (InvocationTargetException e) {
+      throw new IllegalStateException("@ConfigurationFilter failed on " + point, e.getCause());
+    }
+  }
+
+  /**
+   * Returns whether reflection can pass {@code value} for {@code parameter}, unboxing and widening primitives.
+   */
+  private static boolean canPass(Class<?> parameter, Object value) {
+    if (!parameter.isPrimitive()) {
+      return value == null || parameter.isInstance(value);
+    } else if (value == null) {
+      return false;
+    }
+    Class<?> type = Primitives.unwrap(value.getClass());
+    if (type == parameter) {
+      return true;
+    }
+    int from = NUMERIC_WIDENING.indexOf((type == char.class) ? int.class : type);
+    return from >= 0 && NUMERIC_WIDENING.indexOf(parameter) >= from;
+  }
+
+  /**
+   * Returns the names of the fields of {@code cls} in declaration order, which reflection does not guarantee.
+   */
+  private static List<String> declarationOrder(Class<?> cls) {
+    ClassLoader classLoader = (cls.getClassLoader() != null)
+        ? cls.getClassLoader() : ClassLoader.getSystemClassLoader();
+    TypePool typePool = TypePool.Default.of(ClassFileLocator.ForClassLoader.of(classLoader));
+    TypePool.Resolution resolution = typePool.describe(cls.getName());
+    if (!resolution.isResolved()) {
+      return Arrays.stream(cls.getDeclaredFields()).map(Field::getName).collect(toList());
+    }
+    return resolution.resolve()
+        .getDeclaredFields()
+        .stream()
+        .map(FieldDescription::getName)
+        .collect(toList());
+  }
+
+  private static String pad(String value, int width) {
+    checkState(value.length() <= width);
+    StringBuilder padded = new StringBuilder(value);
+    while (padded.length() < width) {
+      padded.append(' ');
+    }
+    return padded.toString();
+  }
+}
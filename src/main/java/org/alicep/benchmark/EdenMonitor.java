@@ -3,12 +3,11 @@ package org.alicep.benchmark;
 import static java.lang.management.ManagementFactory.getGarbageCollectorMXBeans;
 import static java.lang.management.ManagementFactory.getMemoryPoolMXBeans;
 
-import java.io.Closeable;
 import java.lang.management.MemoryPoolMXBean;
 import java.lang.management.MemoryUsage;
 import java.util.Arrays;
 
-class EdenMonitor implements Closeable {
+class EdenMonitor implements AllocationMonitor {
 
   /**
    * The size of a {@link MemoryUsage} instance.
@@ -53,10 +52,16 @@ class EdenMonitor implements Closeable {
    *
    * <p>Only accurate to within {@link #SAMPLE_ERROR_BYTES} at the best of times.
    */
+  @Override
   public long sample() throws InterruptedException {
     return measureUnreclaimed() + reclaimed();
   }
 
+  @Override
+  public int samplingRepeats() {
+    return SAMPLE_ERROR_BYTES / Long.BYTES;
+  }
+
   @Override
   public void close() {
     reclamations.close();
@@ -0,0 +1,192 @@
+package org.alicep.benchmark;
+
+import static java.lang.management.ManagementFactory.getGarbageCollectorMXBeans;
+import static java.lang.management.ManagementFactory.getMemoryMXBean;
+import static java.lang.management.ManagementFactory.getOperatingSystemMXBean;
+import static java.lang.management.ManagementFactory.getRuntimeMXBean;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.joining;
+import static org.alicep.benchmark.Bytes.bytes;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.MemoryUsage;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
+/**
+ * The machine and JVM benchmarks run on: CPU model, frequency governor and turbo state, core count, JVM, flags, GC,
+ * heap sizes and load average, captured before the first benchmark runs so results from different runs can be
+ * compared fairly.
+ *
+ * <p>CPU details are read from {@code /proc} and {@code /sys} where available, and omitted elsewhere.
+ */
+class Environment {
+
+  private static final Path CPU_INFO = Paths.get("/proc/cpuinfo");
+  private static final Path LOAD_AVERAGE = Paths.get("/proc/loadavg");
+  private static final Path CPUS = Paths.get("/sys/devices/system/cpu");
+  private static final Path INTEL_NO_TURBO = CPUS.resolve("intel_pstate/no_turbo");
+  private static final Path CPUFREQ_BOOST = CPUS.resolve("cpufreq/boost");
+  private static final String STEADY_GOVERNOR = "performance";
+
+  private static final Supplier<Environment> INSTANCE = Suppliers.memoize(Environment::new);
+
+  /**
+   * Returns the environment for this JVM, captured the first time this is called.
+   */
+  static Environment instance() {
+    return INSTANCE.get();
+  }
+
+  private final Map<String, Object> fingerprint = new LinkedHashMap<>();
+  private final List<String> warnings = new ArrayList<>();
+  private final AtomicBoolean printed = new AtomicBoolean();
+
+  Environment() {
+    int cores = Runtime.getRuntime().availableProcessors();
+    Set<String> governors = governors();
+    Boolean turbo = turbo();
+    Double loadAverage = loadAverage();
+    MemoryUsage heap = getMemoryMXBean().getHeapMemoryUsage();
+
+    fingerprint.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version")
+        + " " + System.getProperty("os.arch"));
+    fingerprint.put("cpu", cpuModel());
+    fingerprint.put("cores", cores);
+    fingerprint.put("governor", governors.isEmpty() ? null : String.join(",", governors));
+    fingerprint.put("turbo", turbo);
+    fingerprint.put("jvm", System.getProperty("java.vm.name") + " " + System.getProperty("java.runtime.version"));
+    fingerprint.put("jvmArguments", String.join(" ", getRuntimeMXBean().getInputArguments()));
+    fingerprint.put("gc", getGarbageCollectorMXBeans()
+        .stream()
+        .map(GarbageCollectorMXBean::getName)
+        .collect(joining(", ")));
+    fingerprint.put("initialHeapBytes", (heap.getInit() < 0) ? null : heap.getInit());
+    fingerprint.put("maxHeapBytes", (heap.getMax() < 0) ? null : heap.getMax());
+    fingerprint.put("loadAverage", loadAverage);
+
+    governors.stream()
+        .filter(governor -> !governor.equals(STEADY_GOVERNOR))
+        .forEach(governor -> warnings.add("[WARN] CPU frequency governor is " + governor
+            + "; clock speed will vary during benchmarks (set it to " + STEADY_GOVERNOR + ")"));
+    if (Boolean.TRUE.equals(turbo)) {
+      warnings.add("[WARN] Turbo boost is enabled; clock speed will vary with temperature and load");
+    }
+    if (loadAverage != null && loadAverage >= Math.max(1, cores / 4.0)) {
+      warnings.add(String.format("[WARN] Load average is %.2f on %d cores; other processes will disturb timings",
+          loadAverage, cores));
+    }
+  }
+
+  /**
+   * Returns the captured properties, in a fixed order; values are strings, numbers, booleans, or null if unknown.
+   */
+  Map<String, Object> fingerprint() {
+    return Collections.unmodifiableMap(fingerprint);
+  }
+
+  /**
+   * Prints a summary of the environment, and warnings about anything likely to make timings noisy, the first time
+   * it is called.
+   */
+  void printOnce() {
+    if (!printed.compareAndSet(false, true)) {
+      return;
+    }
+    List<String> summary = new ArrayList<>();
+    if (fingerprint.get("cpu") != null) {
+      summary.add((String) fingerprint.get("cpu"));
+    }
+    int cores = (Integer) fingerprint.get("cores");
+    summary.add(cores + ((cores == 1) ? " core" : " cores"));
+    summary.add((String) fingerprint.get("jvm"));
+    summary.add((String) fingerprint.get("gc"));
+    if (fingerprint.get("maxHeapBytes") != null) {
+      summary.add(bytes((Long) fingerprint.get("maxHeapBytes")) + " max heap");
+    }
+    if (fingerprint.get("loadAverage") != null) {
+      summary.add("load average " + fingerprint.get("loadAverage"));
+    }
+    System.out.println("Environment: " + String.join(", ", summary));
+    warnings.forEach(System.out::println);
+    System.out.println();
+  }
+
+  private static String cpuModel() {
+    return readLines(CPU_INFO)
+        .stream()
+        .filter(line -> line.startsWith("model name"))
+        .map(line -> line.substring(line.indexOf(':') + 1).trim())
+        .findFirst()
+        .orElse(null);
+  }
+
+  private static Set<String> governors() {
+    Set<String> governors = new TreeSet<>();
+    if (!Files.isDirectory(CPUS)) {
+      return governors;
+    }
+    try (DirectoryStream<Path> cpus = Files.newDirectoryStream(CPUS, "cpu[0-9]*")) {
+      for (Path cpu : cpus) {
+        readLines(cpu.resolve("cpufreq/scaling_governor"))
+            .stream()
+            .map(String::trim)
+            .filter(governor -> !governor.isEmpty())
+            .forEach(governors::add);
+      }
+    } catch (IOException e) {
+      // Governor unknown
+    }
+    return governors;
+  }
+
+  /**
+   * Returns whether turbo boost is enabled, or null if unknown.
+   */
+  private static Boolean turbo() {
+    List<String> noTurbo = readLines(INTEL_NO_TURBO);
+    if (!noTurbo.isEmpty()) {
+      return noTurbo.get(0).trim().equals("0");
+    }
+    List<String> boost = readLines(CPUFREQ_BOOST);
+    if (!boost.isEmpty()) {
+      return boost.get(0).trim().equals("1");
+    }
+    return null;
+  }
+
+  private static Double loadAverage() {
+    List<String> loadAverage = readLines(LOAD_AVERAGE);
+    if (!loadAverage.isEmpty()) {
+      try {
+        return Double.parseDouble(loadAverage.get(0).split(" ")[0]);
+      } catch (NumberFormatException e) {
+        // Fall back to the MXBean
+      }
+    }
+    double systemLoadAverage = getOperatingSystemMXBean().getSystemLoadAverage();
+    return (systemLoadAverage < 0) ? null : systemLoadAverage;
+  }
+
+  private static List<String> readLines(Path file) {
+    try {
+      return Files.readAllLines(file, UTF_8);
+    } catch (IOException | SecurityException e) {
+      return Collections.emptyList();
+    }
+  }
+}
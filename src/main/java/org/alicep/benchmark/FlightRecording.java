@@ -0,0 +1,200 @@
+package org.alicep.benchmark;
+
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.joining;
+import static org.alicep.benchmark.Bytes.bytes;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.alicep.benchmark.BenchmarkRunner.FlightRecorder;
+import org.alicep.benchmark.BenchmarkRunner.JvmArgs;
+import org.alicep.benchmark.Jfr.Recorded;
+import org.alicep.benchmark.Jfr.Recording;
+import org.junit.runner.Description;
+
+/**
+ * A Java Flight Recorder recording of a single benchmark's measurement phase.
+ *
+ * <p>Enabled by {@link FlightRecorder @FlightRecorder}, or for every benchmark by setting the {@value #PROPERTY}
+ * system property to {@code true} or to the directory to save recordings in (default {@value #DEFAULT_DIRECTORY}).
+ */
+class FlightRecording implements AutoCloseable {
+
+  static final String PROPERTY = "benchmark.flightRecorder";
+  static final String DEFAULT_DIRECTORY = "build/benchmark-recordings";
+
+  private static final String DEFAULT_SETTINGS = "profile";
+  private static final Duration SAMPLE_PERIOD = Duration.ofMillis(1);
+  private static final int TOP_ENTRIES = 5;
+
+  /**
+   * Returns an unstarted recording for the benchmark, or null if it is not to be recorded or, after printing a
+   * warning, if Flight Recorder is not available.
+   */
+  static FlightRecording forBenchmark(Description description) {
+    String property = System.getProperty(PROPERTY, "");
+    FlightRecorder annotation = description.getAnnotation(FlightRecorder.class);
+    boolean enabledForAll = !property.isEmpty() && !property.equalsIgnoreCase("false");
+    if (annotation == null && !enabledForAll) {
+      return null;
+    }
+    Path directory = (property.isEmpty() || property.equalsIgnoreCase("true") || property.equalsIgnoreCase("false"))
+        ? Paths.get(DEFAULT_DIRECTORY) : Paths.get(property);
+    String settings = (annotation == null) ? DEFAULT_SETTINGS : annotation.settings();
+    String fileName = fileName(description, ".jfr");
+    try {
+      Recording recording = new Recording(settings);
+      recording.enableWithPeriod("jdk.ExecutionSample", SAMPLE_PERIOD);
+      return new FlightRecording(recording, directory.resolve(fileName));
+    } catch (LinkageError | RuntimeException e) {
+      System.out.println("[WARN] Flight recording unavailable: " + e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns a file name for {@code description}'s results, distinguishing the flag sets of a {@link JvmArgs} sweep,
+   * whose children would otherwise overwrite each other's files.
+   */
+  static String fileName(Description description, String extension) {
+    String flags = JvmArgsSweep.forkedFlags();
+    String name = description.getClassName() + "." + description.getMethodName()
+        + ((flags == null) ? "" : flags.isEmpty() ? " default flags" : " " + flags);
+    return name.replaceAll("[^\\w.$-]+", "_") + extension;
+  }
+
+  private final Recording recording;
+  private final Path file;
+  private long threadId;
+
+  private FlightRecording(Recording recording, Path file) {
+    this.recording = recording;
+    this.file = file;
+  }
+
+  void start() {
+    threadId = Thread.currentThread().getId();
+    recording.start();
+  }
+
+  void stop() {
+    recording.stop();
+  }
+
+  /**
+   * Saves the recording and prints a summary of it.
+   *
+   * <p>Only samples and allocations with classes defined by {@code classLoader} on the stack count, leaving out the
+   * runner's own overhead. Collections the runner requested between samples are counted separately.
+   */
+  void save(ClassLoader classLoader, PrintStream ps) {
+    List<Recorded> events;
+    try {
+      Files.createDirectories(file.getParent());
+      recording.dump(file);
+      events = Recorded.readAllEvents(file);
+    } catch (IOException e) {
+      ps.println("[WARN] Flight recording not saved: " + e);
+      return;
+    }
+
+    String classLoaderType = classLoader.getClass().getName();
+    Map<String, Long> samples = new HashMap<>();
+    Map<String, Long> allocations = new HashMap<>();
+    Map<String, Long> contention = new HashMap<>();
+    long contendedNanos = 0;
+    long explicitCollections = 0;
+    long pauses = 0;
+    long pauseNanos = 0;
+    long longestPauseNanos = 0;
+    for (Recorded event : events) {
+      String type = event.getEventTypeName();
+      if (type.equals("jdk.GarbageCollection") && event.getString("cause").equals("System.gc()")) {
+        explicitCollections++;
+        continue;
+      } else if (type.equals("jdk.GarbageCollection")) {
+        pauses++;
+        pauseNanos += event.getDuration("sumOfPauses").toNanos();
+        longestPauseNanos = Math.max(longestPauseNanos, event.getDuration("longestPause").toNanos());
+        continue;
+      }
+      Recorded thread = type.equals("jdk.ExecutionSample")
+          ? event.getValue("sampledThread") : event.getThread();
+      if (thread == null || thread.getJavaThreadId() != threadId || !inBenchmark(event, classLoaderType)) {
+        continue;
+      }
+      switch (type) {
+        case "jdk.ExecutionSample": {
+          samples.merge(method(event.getStackTrace().getFrames().get(0)), 1L, Long::sum);
+          break;
+        }
+        case "jdk.ObjectAllocationInNewTLAB":
+          // Only allocations that start a new TLAB are recorded, so credit each with the whole TLAB
+          allocations.merge(className(event.getValue("objectClass")), event.getLong("tlabSize"), Long::sum);
+          break;
+        case "jdk.ObjectAllocationOutsideTLAB":
+          allocations.merge(className(event.getValue("objectClass")), event.getLong("allocationSize"), Long::sum);
+          break;
+        case "jdk.JavaMonitorEnter":
+          contention.merge(className(event.getValue("monitorClass")), event.getDuration().toNanos(), Long::sum);
+          contendedNanos += event.getDuration().toNanos();
+          break;
+        default:
+          break;
+      }
+    }
+
+    long totalSamples = samples.values().stream().mapToLong(Long::longValue).sum();
+    ps.println("  * Flight recording saved to " + file);
+    ps.println("      hot methods: " + top(samples, count -> String.format("%.0f%%", 100.0 * count / totalSamples)));
+    ps.println("      allocations by TLAB volume: " + top(allocations, size -> bytes(size).toString()));
+    ps.println("      lock contention: " + (contention.isEmpty()
+        ? "none" : Nanos.formatNanos(contendedNanos) + " in " + top(contention, Nanos::formatNanos)));
+    ps.println("      GC pauses: " + ((pauses == 0) ? "none" : pauses + " totalling " + Nanos.formatNanos(pauseNanos)
+        + ", longest " + Nanos.formatNanos(longestPauseNanos))
+        + ((explicitCollections == 0) ? "" : " (excluding " + explicitCollections + " requested by the runner)"));
+  }
+
+  @Override
+  public void close() {
+    recording.close();
+  }
+
+  private static boolean inBenchmark(Recorded event, String classLoaderType) {
+    Recorded stackTrace = event.getStackTrace();
+    return stackTrace != null && stackTrace.getFrames()
+        .stream()
+        .anyMatch(frame -> frame.isJavaFrame()
+            && InliningReport.isDefinedBy(frame.getMethod().getType(), classLoaderType));
+  }
+
+  private static String top(Map<String, Long> values, Function<Long, String> format) {
+    if (values.isEmpty()) {
+      return "none recorded";
+    }
+    return values.entrySet()
+        .stream()
+        .sorted(comparing(Map.Entry<String, Long>::getValue).reversed())
+        .limit(TOP_ENTRIES)
+        .map(entry -> entry.getKey() + " (" + format.apply(entry.getValue()) + ")")
+        .collect(joining(", "));
+  }
+
+  private static String method(Recorded frame) {
+    Recorded method = frame.getMethod();
+    return className(method.getType()) + "::" + method.getName();
+  }
+
+  private static String className(Recorded type) {
+    return type.getName().replace('/', '.');
+  }
+}
@@ -1,14 +1,31 @@
 package org.alicep.benchmark;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import java.io.IOException;
 import java.lang.reflect.MalformedParametersException;
+import java.lang.reflect.Modifier;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
 
 import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.modifier.TypeManifestation;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.dynamic.DynamicType;
 import net.bytebuddy.dynamic.scaffold.TypeValidation;
 
 /**
@@ -18,7 +35,8 @@ import net.bytebuddy.dynamic.scaffold.TypeValidation;
  */
 class ForkingClassLoader extends ClassLoader {
 
-  private static final String FORK_PACKAGE = "forked.";
+  static final String FORK_PACKAGE = "forked.";
+  private static final Pattern CORE_CLASS_REFERENCE = Pattern.compile("java/[\\w/$]+");
 
   private static ClassLoader rootClassLoader() {
     ClassLoader classLoader = getSystemClassLoader();
@@ -30,6 +48,7 @@ class ForkingClassLoader extends ClassLoader {
 
   private final ClassLoader original;
   private final List<Predicate<Class<?>>> corePredicates = new ArrayList<>();
+  private final List<String> forkedCoreClasses = new ArrayList<>();
 
   protected ForkingClassLoader(ClassLoader original) {
     super(rootClassLoader());
@@ -41,11 +60,21 @@ class ForkingClassLoader extends ClassLoader {
     return this;
   }
 
+  /**
+   * Returns the core classes forked by this classloader so far, in the order they were loaded.
+   */
+  public synchronized List<String> forkedCoreClasses() {
+    return new ArrayList<>(forkedCoreClasses);
+  }
+
   private String rename(String cls) {
     if (cls.startsWith("java.")) {
       try {
         Class<?> outermostClass = outermostClass(cls);
-        if (corePredicates.stream().anyMatch(p -> p.test(outermostClass))) {
+        // Only core classes can reference non-public ones, and a forked class cannot access the originals
+        boolean nonPublic = !Modifier.isPublic(outermostClass.getModifiers());
+        boolean forkable = !HAS_NATIVE_METHODS.get(outermostClass);
+        if (forkable && (nonPublic || corePredicates.stream().anyMatch(p -> p.test(outermostClass)))) {
           return FORK_PACKAGE + cls;
         }
       } catch (ClassNotFoundException e) {
@@ -55,6 +84,17 @@ class ForkingClassLoader extends ClassLoader {
     return cls;
   }
 
+  /**
+   * Whether a class or its nested classes declare native methods, which cannot be linked once forked.
+   */
+  private static final ClassValue<Boolean> HAS_NATIVE_METHODS = new ClassValue<Boolean>() {
+    @Override
+    protected Boolean computeValue(Class<?> cls) {
+      return Arrays.stream(cls.getDeclaredMethods()).anyMatch(method -> Modifier.isNative(method.getModifiers()))
+          || Arrays.stream(cls.getDeclaredClasses()).anyMatch(HAS_NATIVE_METHODS::get);
+    }
+  };
+
   private static Class<?> outermostClass(String cls) throws ClassNotFoundException {
     Class<?> classObject = ClassLoader.getSystemClassLoader().loadClass(cls);
     while (classObject.getEnclosingClass() != null) {
@@ -68,14 +108,26 @@ class ForkingClassLoader extends ClassLoader {
     String originalName = name.startsWith(FORK_PACKAGE) ? name.substring(FORK_PACKAGE.length()) : name;
     Class<?> originalClass = original.loadClass(originalName);
     try {
-      byte[] bytes = new ByteBuddy()
-          .with(TypeValidation.DISABLED)
-          .redefine(originalClass)
-          .name(name)
-          .visit(new SubstituteClassReferences(this::rename))
-          .make()
-          .getBytes();
-      return super.defineClass(name, bytes, 0, bytes.length);
+      Supplier<byte[]> fork = () -> {
+        DynamicType.Builder<?> builder = new ByteBuddy()
+            .with(TypeValidation.DISABLED)
+            .redefine(originalClass)
+            .name(name);
+        if (name.equals(UnsafeAccess.FORKED_NAME)) {
+          // Called from forked core classes in other packages
+          builder = builder.modifiers(Visibility.PUBLIC, TypeManifestation.FINAL);
+        }
+        return builder.visit(new SubstituteClassReferences(this::rename)).make().getBytes();
+      };
+      HashCode key = cacheKey(name, originalClass);
+      ByteBuffer bytes = (key == null) ? ByteBuffer.wrap(fork.get()) : ClassCache.instance().computeIfAbsent(key, fork);
+      Class<?> forkedClass = super.defineClass(name, bytes, null);
+      if (name.startsWith(FORK_PACKAGE) && !name.equals(UnsafeAccess.FORKED_NAME)) {
+        synchronized (this) {
+          forkedCoreClasses.add(originalName);
+        }
+      }
+      return forkedClass;
     } catch (IllegalStateException e) {
       if (e.getCause() instanceof MalformedParametersException) {
         MalformedParametersException cause = (MalformedParametersException) e.getCause();
@@ -89,6 +141,36 @@ class ForkingClassLoader extends ClassLoader {
     }
   }
 
+  /**
+   * Returns a key covering everything the forked bytecode depends on, or null if it cannot be cached.
+   *
+   * <p>Besides the original bytes, that is which of the core classes it may reference are themselves forked. Every
+   * such reference appears verbatim in the constant pool, so scanning the raw bytes finds them all.
+   */
+  private HashCode cacheKey(String name, Class<?> originalClass) {
+    if (!ClassCache.instance().isEnabled()) {
+      return null;
+    }
+    ClassLoader definingLoader = (originalClass.getClassLoader() != null)
+        ? originalClass.getClassLoader() : ClassLoader.getSystemClassLoader();
+    byte[] originalBytes = ClassCache.classBytes(definingLoader, originalClass.getName());
+    if (originalBytes == null) {
+      return null;
+    }
+    Hasher key = ClassCache.newKey("fork").putString(name, UTF_8).putBytes(originalBytes);
+    Set<String> coreClasses = new TreeSet<>();
+    Matcher matcher = CORE_CLASS_REFERENCE.matcher(new String(originalBytes, ISO_8859_1));
+    while (matcher.find()) {
+      coreClasses.add(matcher.group().replace('/', '.'));
+    }
+    for (String coreClass : coreClasses) {
+      if (!rename(coreClass).equals(coreClass)) {
+        key.putString(coreClass, UTF_8).putByte((byte) 0);
+      }
+    }
+    return key.hash();
+  }
+
   @Override
   protected URL findResource(String name) {
     return original.getResource(name);
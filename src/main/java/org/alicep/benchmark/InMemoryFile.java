@@ -1,7 +1,8 @@
 package org.alicep.benchmark;
 
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -12,29 +13,52 @@ import java.io.Reader;
 import java.io.Writer;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.nio.file.FileAlreadyExistsException;
+import java.util.Arrays;
 
 import javax.tools.FileObject;
 
 class InMemoryFile implements FileObject {
 
-  private static class Bytes extends ByteArrayOutputStream {
+  /**
+   * Append-only contents of a file. Bytes once written never change, so views of them can be handed out without
+   * copying. Unsynchronized, as javac writes each file from a single thread.
+   */
+  private static class Bytes extends OutputStream {
 
+    private byte[] buf = new byte[256];
+    private int count = 0;
     private long lastModified = System.currentTimeMillis();
 
     @Override
-    public synchronized void write(int b) {
-      super.write(b);
-      lastModified = System.currentTimeMillis();
+    public void write(int b) {
+      ensureCapacity(count + 1);
+      buf[count++] = (byte) b;
     }
 
     @Override
-    public synchronized void write(byte[] b, int off, int len) {
-      super.write(b, off, len);
+    public void write(byte[] b, int off, int len) {
+      checkPositionIndexes(off, off + len, b.length);
+      ensureCapacity(count + len);
+      System.arraycopy(b, off, buf, count, len);
+      count += len;
+    }
+
+    @Override
+    public void close() {
       lastModified = System.currentTimeMillis();
     }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(capacity, buf.length * 2));
+      }
+    }
   }
 
+  private static final byte[] EMPTY = new byte[0];
+
   private final String name;
   private Bytes data;
 
@@ -52,12 +76,23 @@ class InMemoryFile implements FileObject {
     return name;
   }
 
+  /**
+   * Returns a read-only view of the file's contents, without copying.
+   */
   public ByteBuffer getBuffer() {
-    if (data == null) {
-      return ByteBuffer.allocate(0).asReadOnlyBuffer();
-    } else {
-      return ByteBuffer.wrap(data.toByteArray()).asReadOnlyBuffer();
-    }
+    return ByteBuffer.wrap(array(), 0, size()).asReadOnlyBuffer();
+  }
+
+  /**
+   * Returns the array backing the file's contents, without copying. Only the first {@link #size()} bytes are the
+   * file's, and none may be modified.
+   */
+  byte[] array() {
+    return (data == null) ? EMPTY : data.buf;
+  }
+
+  int size() {
+    return (data == null) ? 0 : data.count;
   }
 
   @Override
@@ -86,7 +121,7 @@ class InMemoryFile implements FileObject {
     if (data == null) {
       throw new FileNotFoundException(toUri().toString());
     }
-    return new ByteArrayInputStream(data.toByteArray());
+    return new ByteArrayInputStream(data.buf, 0, data.count);
   }
 
   @Override
@@ -99,7 +134,7 @@ class InMemoryFile implements FileObject {
     if (data == null) {
       throw new FileNotFoundException(toUri().toString());
     }
-    return data.toString();
+    return new String(data.buf, 0, data.count, Charset.defaultCharset());
   }
 
   @Override
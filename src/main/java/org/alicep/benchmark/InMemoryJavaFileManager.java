@@ -8,14 +8,20 @@ import static javax.tools.StandardLocation.SOURCE_OUTPUT;
 import static javax.tools.ToolProvider.getSystemJavaCompiler;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Stream;
+import java.util.TreeMap;
+import java.util.function.Function;
 
 import javax.tools.DiagnosticListener;
 import javax.tools.FileObject;
@@ -84,6 +90,12 @@ class InMemoryJavaFileManager implements JavaFileManager {
   private final Map<FileKey, InMemoryJavaFile> javaFiles = new LinkedHashMap<>();
   private final Map<FileKey, InMemoryFile> otherFiles = new LinkedHashMap<>();
 
+  /**
+   * {@link #javaFiles} indexed by location then directory, so javac's per-package {@link #list} calls do not scan
+   * every file. Sorted, so a package and its subpackages form a contiguous range.
+   */
+  private final Map<Location, NavigableMap<String, List<InMemoryJavaFile>>> javaFilesByDirectory = new HashMap<>();
+
   private InMemoryJavaFileManager(StandardJavaFileManager delegate) {
     this.delegate = delegate;
   }
@@ -99,7 +111,7 @@ class InMemoryJavaFileManager implements JavaFileManager {
       protected Class<?> findClass(String name) throws ClassNotFoundException {
         InMemoryJavaFile classFile = javaFiles.get(FileKey.forClass(CLASS_OUTPUT, name, CLASS));
         if (classFile != null) {
-          return super.defineClass(name, classFile.getBuffer(), null);
+          return super.defineClass(name, classFile.array(), 0, classFile.size());
         }
         return super.findClass(name);
       }
@@ -112,7 +124,7 @@ class InMemoryJavaFileManager implements JavaFileManager {
       protected Class<?> findClass(String name) throws ClassNotFoundException {
         InMemoryJavaFile classFile = javaFiles.get(FileKey.forClass(CLASS_OUTPUT, name, CLASS));
         if (classFile != null) {
-          return super.defineClass(name, classFile.getBuffer(), null);
+          return super.defineClass(name, classFile.array(), 0, classFile.size());
         }
         return super.findClass(name);
       }
@@ -129,7 +141,7 @@ class InMemoryJavaFileManager implements JavaFileManager {
           if (classFile == null) {
             throw new ClassNotFoundException();
           }
-          return super.defineClass(name, classFile.getBuffer(), null);
+          return super.defineClass(name, classFile.array(), 0, classFile.size());
         }
       };
     } else {
@@ -151,20 +163,36 @@ class InMemoryJavaFileManager implements JavaFileManager {
     Iterable<JavaFileObject> delegateList = delegate.list(location, packageName, kinds, recurse);
     String directory = packageName.replace('.', '/');
     return () -> {
-      Stream<JavaFileObject> inMemoryFiles = javaFiles.entrySet()
+      Iterator<JavaFileObject> inMemoryFiles = javaFilesIn(location, directory, recurse)
           .stream()
-          .filter(e -> e.getKey().getKey().equals(location))
-          .filter(e -> {
-            String fileName = e.getKey().getValue();
-            String fileDir = fileName.substring(0, fileName.lastIndexOf('/'));
-            return recurse ? fileDir.startsWith(directory) : fileDir.equals(directory);
-          })
-          .filter(e -> kinds.contains(e.getValue().getKind()))
-          .map(e -> e.getValue());
-      return Iterators.concat(inMemoryFiles.iterator(), delegateList.iterator());
+          .flatMap(List::stream)
+          .filter(file -> kinds.contains(file.getKind()))
+          .map(file -> (JavaFileObject) file)
+          .iterator();
+      return Iterators.concat(inMemoryFiles, delegateList.iterator());
     };
   }
 
+  private Collection<List<InMemoryJavaFile>> javaFilesIn(Location location, String directory, boolean recurse) {
+    NavigableMap<String, List<InMemoryJavaFile>> directories = javaFilesByDirectory.get(location);
+    if (directories == null) {
+      return Collections.emptyList();
+    } else if (!recurse) {
+      List<InMemoryJavaFile> files = directories.get(directory);
+      return (files == null) ? Collections.emptyList() : Collections.singletonList(files);
+    } else if (directory.isEmpty()) {
+      return directories.values();
+    } else {
+      // '0' sorts immediately after '/', so this range covers exactly the subdirectories of directory
+      List<List<InMemoryJavaFile>> files = new ArrayList<>();
+      if (directories.containsKey(directory)) {
+        files.add(directories.get(directory));
+      }
+      files.addAll(directories.subMap(directory + "/", true, directory + "0", false).values());
+      return files;
+    }
+  }
+
   @Override
   public String inferBinaryName(Location location, JavaFileObject file) {
     if (file.toUri().getScheme().equals("mem")) {
@@ -200,11 +228,24 @@ class InMemoryJavaFileManager implements JavaFileManager {
     checkArgument(LOCATIONS.contains(location),
         "Unsupported location %s (must be one of %s)", location, LOCATIONS);
     checkArgument(KINDS.contains(kind), "Unsupported kind %s (must be one of %s)", kind, KINDS);
-    return javaFiles.computeIfAbsent(
+    return javaFile(
         FileKey.forClass(location, className, kind),
         k -> new InMemoryJavaFile(qualifiedName(className), kind));
   }
 
+  private InMemoryJavaFile javaFile(FileKey key, Function<FileKey, InMemoryJavaFile> factory) {
+    return javaFiles.computeIfAbsent(key, k -> {
+      InMemoryJavaFile file = factory.apply(k);
+      String path = k.getValue();
+      String directory = path.substring(0, Math.max(path.lastIndexOf('/'), 0));
+      javaFilesByDirectory
+          .computeIfAbsent(k.getKey(), location -> new TreeMap<>())
+          .computeIfAbsent(directory, d -> new ArrayList<>())
+          .add(file);
+      return file;
+    });
+  }
+
   private static QualifiedName qualifiedName(String className) {
     int lastPeriod = className.lastIndexOf('.');
     String packageName = lastPeriod >= 0 ? className.substring(0, lastPeriod) : "";
@@ -249,7 +290,7 @@ class InMemoryJavaFileManager implements JavaFileManager {
     Kind kind = kindFromExtension(relativeName);
     FileKey key = FileKey.forFile(location, packageName, relativeName);
     if (KINDS.contains(kind)) {
-      return javaFiles.computeIfAbsent(key, k -> {
+      return javaFile(key, k -> {
         QualifiedName qualifiedName = qualifiedName(relativeName
             .substring(0, relativeName.length() - kind.extension.length())
             .replace('/', '.'));
@@ -266,6 +307,7 @@ class InMemoryJavaFileManager implements JavaFileManager {
   @Override
   public void close() {
     javaFiles.clear();
+    javaFilesByDirectory.clear();
     otherFiles.clear();
     try {
       delegate.close();
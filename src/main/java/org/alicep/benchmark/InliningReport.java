@@ -0,0 +1,176 @@
+package org.alicep.benchmark;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.alicep.benchmark.Jfr.Recorded;
+import org.alicep.benchmark.Jfr.Recording;
+
+/**
+ * Records the JIT's inlining decisions while a benchmark runs, using Flight Recorder, and reports the call sites the
+ * optimizing compiler could not inline, or could only inline behind a type check.
+ *
+ * <p>Only compilations rooted in classes defined by the benchmark's own class-loader are considered, but every
+ * decision within them is reported, including in inlined core library code, as that is where profile pollution
+ * from earlier benchmarks typically shows. Call sites the compiler could not bind statically are reported as
+ * megamorphic, and sites where it inlined more than one receiver type as bimorphic. Not every JVM records the
+ * megamorphic case (JDK 8 silently compiles a virtual call), so a bimorphic site is often the only visible sign that
+ * a call site's type profile is shared with other code.
+ */
+class InliningReport implements AutoCloseable {
+
+  private static final int OPTIMIZING_COMPILER_LEVEL = 4;
+  private static final int MAX_SITES = 20;
+
+  /**
+   * Starts recording, or returns null, after printing a warning, if Flight Recorder is not available.
+   */
+  static InliningReport start() {
+    try {
+      Recording recording = new Recording(null);
+      recording.enable("jdk.CompilerInlining");
+      recording.enableWithThreshold("jdk.Compilation", Duration.ZERO);
+      recording.start();
+      return new InliningReport(recording);
+    } catch (LinkageError | RuntimeException e) {
+      System.out.println("[WARN] Inlining report unavailable: " + e);
+      return null;
+    }
+  }
+
+  private final Recording recording;
+
+  private InliningReport(Recording recording) {
+    this.recording = recording;
+  }
+
+  void stop() {
+    recording.stop();
+  }
+
+  /**
+   * Prints the failed inlines and megamorphic call sites in compilations of classes defined by {@code classLoader}.
+   */
+  void print(ClassLoader classLoader, PrintStream ps) {
+    List<Recorded> events;
+    try {
+      Path file = Files.createTempFile("inlining", ".jfr");
+      try {
+        recording.dump(file);
+        events = Recorded.readAllEvents(file);
+      } finally {
+        Files.delete(file);
+      }
+    } catch (IOException e) {
+      ps.println("[WARN] Inlining report unavailable: " + e);
+      return;
+    }
+
+    String classLoaderType = classLoader.getClass().getName();
+    Set<Long> compileIds = new HashSet<>();
+    for (Recorded event : events) {
+      if (event.getEventTypeName().equals("jdk.Compilation")
+          && event.getInt("compileLevel") == OPTIMIZING_COMPILER_LEVEL
+          && isDefinedBy(event.getValue("method").getType(), classLoaderType)) {
+        compileIds.add(event.getLong("compileId"));
+      }
+    }
+    if (compileIds.isEmpty()) {
+      ps.println("  * No optimized compilations of benchmark code recorded");
+      return;
+    }
+
+    Decisions decisions = new Decisions();
+    for (Recorded event : events) {
+      if (event.getEventTypeName().equals("jdk.CompilerInlining")
+          && compileIds.contains(event.getLong("compileId"))) {
+        decisions.add(
+            event.getLong("compileId"),
+            site(event),
+            callee(event),
+            event.getBoolean("succeeded"),
+            event.getString("message"));
+      }
+    }
+    Set<String> bimorphic = decisions.bimorphic();
+
+    ps.println("  * Inlining: " + decisions.megamorphic.size() + " megamorphic call sites, "
+        + bimorphic.size() + " bimorphic, " + decisions.failed.size() + " failed inlines");
+    printSites("megamorphic", decisions.megamorphic, ps);
+    printSites("bimorphic", bimorphic, ps);
+    printSites("not inlined", decisions.failed, ps);
+  }
+
+  @Override
+  public void close() {
+    recording.close();
+  }
+
+  static boolean isDefinedBy(Recorded type, String classLoaderType) {
+    Recorded classLoader = type.getClassLoader();
+    return classLoader != null
+        && classLoader.getType() != null
+        && classLoader.getType().getName().replace('/', '.').equals(classLoaderType);
+  }
+
+  /**
+   * The inlining decisions of one or more compilations, classified by call site.
+   */
+  static final class Decisions {
+    final Set<String> megamorphic = new TreeSet<>();
+    final Set<String> failed = new TreeSet<>();
+    private final Map<String, Set<String>> inlinedReceivers = new HashMap<>();
+
+    /**
+     * Records the compiler's decision to inline {@code callee} at {@code site}, or not, with {@code message}.
+     */
+    void add(long compileId, String site, String callee, boolean succeeded, String message) {
+      if (succeeded) {
+        inlinedReceivers.computeIfAbsent(compileId + " " + site, key -> new TreeSet<>()).add(callee);
+      } else if (message.equals("no static binding") || message.equals("virtual call")) {
+        megamorphic.add(site + " -> " + callee + " (" + message + ")");
+      } else {
+        failed.add(site + " -> " + callee + " (" + message + ")");
+      }
+    }
+
+    /**
+     * Returns the sites where a single compilation inlined more than one callee, with the callees.
+     */
+    Set<String> bimorphic() {
+      Set<String> bimorphic = new TreeSet<>();
+      inlinedReceivers.forEach((site, callees) -> {
+        if (callees.size() > 1) {
+          bimorphic.add(site.substring(site.indexOf(' ') + 1) + " -> " + String.join(", ", callees));
+        }
+      });
+      return bimorphic;
+    }
+  }
+
+  private static String site(Recorded event) {
+    Recorded caller = event.getValue("caller");
+    return caller.getType().getName().replace('/', '.') + "::" + caller.getName() + " @" + event.getInt("bci");
+  }
+
+  private static String callee(Recorded event) {
+    Recorded callee = event.getValue("callee");
+    return callee.getString("type").replace('/', '.') + "::" + callee.getString("name");
+  }
+
+  private static void printSites(String kind, Set<String> sites, PrintStream ps) {
+    sites.stream().limit(MAX_SITES).forEach(site -> ps.println("      " + kind + ": " + site));
+    if (sites.size() > MAX_SITES) {
+      ps.println("      ... and " + (sites.size() - MAX_SITES) + " more " + kind);
+    }
+  }
+}
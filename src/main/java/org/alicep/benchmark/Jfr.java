@@ -0,0 +1,276 @@
+package org.alicep.benchmark;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reflective access to Flight Recorder's {@code jdk.jfr} API, which is missing from some JDKs this project must
+ * compile against (Oracle JDK 8 before 8u262, or any JDK with {@code --release 8}).
+ *
+ * <p>Anything here throws {@link UnsupportedOperationException} if Flight Recorder is not available.
+ */
+final class Jfr {
+
+  private static final ClassValue<Map<String, Method>> METHODS = new ClassValue<Map<String, Method>>() {
+    @Override
+    protected Map<String, Method> computeValue(Class<?> type) {
+      return new ConcurrentHashMap<>();
+    }
+  };
+
+  /**
+   * A {@code jdk.jfr.Recording}.
+   */
+  static final class Recording implements AutoCloseable {
+
+    private final Object recording;
+
+    /**
+     * Creates a recording using the named settings, e.g. {@code "profile"}, or with no events enabled if
+     * {@code settings} is null.
+     */
+    Recording(String settings) {
+      try {
+        Class<?> recordingType = Class.forName("jdk.jfr.Recording");
+        if (settings == null) {
+          recording = recordingType.getConstructor().newInstance();
+        } else {
+          Class<?> configurationType = Class.forName("jdk.jfr.Configuration");
+          Object configuration = invoke(configurationType, null, "getConfiguration", types(String.class), settings);
+          recording = recordingType.getConstructor(configurationType).newInstance(configuration);
+        }
+      } catch (InvocationTargetException e) {
+        throw rethrow(e.getCause());
+      } catch (ReflectiveOperationException e) {
+        throw new UnsupportedOperationException("Flight Recorder not available", e);
+      }
+    }
+
+    void enable(String event) {
+      call(recording, "enable", types(String.class), event);
+    }
+
+    void enableWithPeriod(String event, Duration period) {
+      call(call(recording, "enable", types(String.class), event), "withPeriod", types(Duration.class), period);
+    }
+
+    void enableWithThreshold(String event, Duration threshold) {
+      call(call(recording, "enable", types(String.class), event), "withThreshold", types(Duration.class), threshold);
+    }
+
+    void start() {
+      call(recording, "start", types());
+    }
+
+    void stop() {
+      call(recording, "stop", types());
+    }
+
+    void dump(Path file) throws IOException {
+      callThrowingIOException(recording, "dump", types(Path.class), file);
+    }
+
+    @Override
+    public void close() {
+      call(recording, "close", types());
+    }
+  }
+
+  /**
+   * A {@code jdk.jfr.consumer.RecordedObject}: an event, or one of the values it holds.
+   */
+  static final class Recorded {
+
+    /**
+     * Returns every event in a recording file, as {@code jdk.jfr.consumer.RecordingFile.readAllEvents} does.
+     */
+    static List<Recorded> readAllEvents(Path file) throws IOException {
+      Class<?> recordingFile;
+      try {
+        recordingFile = Class.forName("jdk.jfr.consumer.RecordingFile");
+      } catch (ClassNotFoundException e) {
+        throw new UnsupportedOperationException("Flight Recorder not available", e);
+      }
+      try {
+        return wrap((List<?>) invoke(recordingFile, null, "readAllEvents", types(Path.class), file));
+      } catch (InvocationTargetException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw rethrow(e.getCause());
+      }
+    }
+
+    private final Object object;
+
+    private Recorded(Object object) {
+      this.object = object;
+    }
+
+    /** The name of this event's type. */
+    String getEventTypeName() {
+      return (String) call(call(object, "getEventType", types()), "getName", types());
+    }
+
+    /** The value of {@code field}, or null. */
+    Recorded getValue(String field) {
+      return wrap(call(object, "getValue", types(String.class), field));
+    }
+
+    String getString(String field) {
+      return (String) call(object, "getString", types(String.class), field);
+    }
+
+    long getLong(String field) {
+      return (Long) call(object, "getLong", types(String.class), field);
+    }
+
+    int getInt(String field) {
+      return (Integer) call(object, "getInt", types(String.class), field);
+    }
+
+    boolean getBoolean(String field) {
+      return (Boolean) call(object, "getBoolean", types(String.class), field);
+    }
+
+    Duration getDuration(String field) {
+      return (Duration) call(object, "getDuration", types(String.class), field);
+    }
+
+    /** The duration of this event. */
+    Duration getDuration() {
+      return (Duration) call(object, "getDuration", types());
+    }
+
+    /** The thread this event was emitted in, or null. */
+    Recorded getThread() {
+      return wrap(call(object, "getThread", types()));
+    }
+
+    /** This thread's {@link Thread#getId() Java ID}. */
+    long getJavaThreadId() {
+      return (Long) call(object, "getJavaThreadId", types());
+    }
+
+    /** This event's stack trace, or null. */
+    Recorded getStackTrace() {
+      return wrap(call(object, "getStackTrace", types()));
+    }
+
+    /** This stack trace's frames, innermost first. */
+    List<Recorded> getFrames() {
+      return wrap((List<?>) call(object, "getFrames", types()));
+    }
+
+    boolean isJavaFrame() {
+      return (Boolean) call(object, "isJavaFrame", types());
+    }
+
+    /** This frame's method. */
+    Recorded getMethod() {
+      return wrap(call(object, "getMethod", types()));
+    }
+
+    /** This method's class, or this class-loader's own type. */
+    Recorded getType() {
+      return wrap(call(object, "getType", types()));
+    }
+
+    /** This class's class-loader, or null. */
+    Recorded getClassLoader() {
+      return wrap(call(object, "getClassLoader", types()));
+    }
+
+    /** This class's or method's name. */
+    String getName() {
+      return (String) call(object, "getName", types());
+    }
+
+    private static Recorded wrap(Object object) {
+      return (object == null) ? null : new Recorded(object);
+    }
+
+    private static List<Recorded> wrap(List<?> objects) {
+      List<Recorded> recorded = new ArrayList<>(objects.size());
+      objects.forEach(object -> recorded.add(wrap(object)));
+      return recorded;
+    }
+  }
+
+  private static Class<?>[] types(Class<?>... types) {
+    return types;
+  }
+
+  private static Object call(Object target, String name, Class<?>[] parameterTypes, Object... args) {
+    try {
+      return invoke(target.getClass(), target, name, parameterTypes, args);
+    } catch (InvocationTargetException e) {
+      throw rethrow(e.getCause());
+    }
+  }
+
+  private static Object callThrowingIOException(
+      Object target, String name, Class<?>[] parameterTypes, Object... args) throws IOException {
+    try {
+      return invoke(target.getClass(), target, name, parameterTypes, args);
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw rethrow(e.getCause());
+    }
+  }
+
+  private static Object invoke(
+      Class<?> type,
+      Object target,
+      String name,
+      Class<?>[] parameterTypes,
+      Object... args) throws InvocationTargetException {
+    String signature = name + Arrays.toString(parameterTypes);
+    try {
+      Method method = METHODS.get(type).get(signature);
+      if (method == null) {
+        method = apiType(type).getMethod(name, parameterTypes);
+        METHODS.get(type).put(signature, method);
+      }
+      return method.invoke(target, args);
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new UnsupportedOperationException("Flight Recorder not available", e);
+    }
+  }
+
+  /**
+   * Returns the nearest superclass of {@code type} in an API package, as implementation classes (e.g. of
+   * {@code EventSettings}) may not be accessible.
+   */
+  private static Class<?> apiType(Class<?> type) throws NoSuchMethodException {
+    for (Class<?> superclass = type; superclass != null; superclass = superclass.getSuperclass()) {
+      String pkg = superclass.getName().substring(0, superclass.getName().lastIndexOf('.'));
+      if (Modifier.isPublic(superclass.getModifiers()) && (pkg.equals("jdk.jfr") || pkg.equals("jdk.jfr.consumer"))) {
+        return superclass;
+      }
+    }
+    throw new NoSuchMethodException("No Flight Recorder API type for " + type.getName());
+  }
+
+  private static RuntimeException rethrow(Throwable cause) {
+    if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    } else if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+    throw new IllegalStateException(cause);
+  }
+
+  private Jfr() { }
+}
@@ -0,0 +1,249 @@
+package org.alicep.benchmark;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.stream.Collectors.joining;
+import static org.alicep.benchmark.Bytes.bytes;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.alicep.benchmark.BenchmarkRunner.JvmArgs;
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+
+/**
+ * Runs a benchmark once per {@link JvmArgs} flag set, each in a child JVM, and prints the results side by side.
+ *
+ * <p>Each child runs {@link #main(String[])}, which benchmarks a single {@link Description} in-process, with the
+ * parent's configuration overrides, and prints its results on a line starting {@link #RESULT_PREFIX}. The
+ * {@code benchmark.forkedJvm} system property stops children forking again.
+ */
+class JvmArgsSweep {
+
+  private static final String FORKED_PROPERTY = "benchmark.forkedJvm";
+  private static final String FORKED_FLAGS_PROPERTY = "benchmark.forkedJvmArgs";
+  private static final String RESULT_PREFIX = "Forked JVM result: ";
+  private static final String DETAIL_PREFIX = "  * ";
+  private static final int FAILURE_LINES = 20;
+
+  /**
+   * Returns whether this JVM was forked to run a single flag set.
+   */
+  static boolean isForked() {
+    return Boolean.getBoolean(FORKED_PROPERTY);
+  }
+
+  /**
+   * Returns the flags this JVM was forked with, or null if it was not forked to run a single flag set.
+   */
+  static String forkedFlags() {
+    return isForked() ? System.getProperty(FORKED_FLAGS_PROPERTY, "") : null;
+  }
+
+  /**
+   * Results of running a benchmark with one flag set.
+   */
+  static class Result {
+    final double meanNanos;
+    final double errorNanos;
+    final long allocatedBytes;
+    final boolean stationary;
+    final List<String> details;
+
+    Result(
+        double meanNanos,
+        double errorNanos,
+        long allocatedBytes,
+        boolean stationary,
+        List<String> details) {
+      this.meanNanos = meanNanos;
+      this.errorNanos = errorNanos;
+      this.allocatedBytes = allocatedBytes;
+      this.stationary = stationary;
+      this.details = details;
+    }
+
+    /**
+     * Returns whether this result's time differs from {@code baseline}'s at 99% confidence, treating each error as
+     * the half-width of an independent normal interval.
+     */
+    boolean differsSignificantlyFrom(Result baseline) {
+      return Math.abs(meanNanos - baseline.meanNanos) > Math.hypot(errorNanos, baseline.errorNanos);
+    }
+  }
+
+  /**
+   * Runs the benchmark described by {@code description}, chosen with {@code configurationOverrides}, in a child JVM
+   * per flag set, printing the results to {@code out}, and returns them in the same order.
+   */
+  static List<Result> run(
+      Description description,
+      JvmArgs jvmArgs,
+      Map<String, String> configurationOverrides,
+      PrintStream out) throws IOException, InterruptedException {
+    checkArgument(jvmArgs.value().length > 0, "@JvmArgs needs at least one flag set");
+    int width = Stream.of(jvmArgs.value()).mapToInt(flags -> label(flags).length()).max().getAsInt();
+    out.println();
+    List<Result> results = new ArrayList<>();
+    for (String flags : jvmArgs.value()) {
+      out.print("  " + pad(label(flags), width) + "  ");
+      out.flush();
+      Result result = fork(description, flags, configurationOverrides);
+      results.add(result);
+      out.print(Nanos.formatNanos(result.meanNanos) + " (±" + Nanos.formatNanos(result.errorNanos) + ")");
+      if (result.allocatedBytes >= 0) {
+        out.print(", " + bytes(result.allocatedBytes));
+      }
+      if (results.size() > 1) {
+        out.print("; " + difference(result, results.get(0)));
+      }
+      out.println();
+      result.details.forEach(detail -> out.println("  " + detail));
+    }
+    return results;
+  }
+
+  static String difference(Result result, Result baseline) {
+    String significance;
+    if (!result.stationary || !baseline.stationary) {
+      // The errors assume stationary timings, so a significance test on drifting ones would mislead
+      significance = "untrustworthy: timings not stationary";
+    } else {
+      significance = result.differsSignificantlyFrom(baseline) ? "significant" : "not significant";
+    }
+    String time = String.format("%+.1f%% time (%s)", (result.meanNanos / baseline.meanNanos - 1) * 100, significance);
+    if (result.allocatedBytes < 0 || baseline.allocatedBytes < 0) {
+      return time;
+    }
+    long allocated = result.allocatedBytes - baseline.allocatedBytes;
+    if (allocated == 0) {
+      return time + ", same allocation";
+    }
+    return time + ", " + ((allocated > 0) ? "+" : "-") + bytes(Math.abs(allocated)) + " allocated";
+  }
+
+  private static Result fork(Description description, String flags, Map<String, String> configurationOverrides)
+      throws IOException, InterruptedException {
+    List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.addAll(flags(flags));
+    System.getProperties().stringPropertyNames().stream()
+        .filter(name -> name.startsWith("benchmark.") && !name.equals(FORKED_FLAGS_PROPERTY))
+        .sorted()
+        .forEach(name -> command.add("-D" + name + "=" + System.getProperty(name)));
+    command.add("-D" + FORKED_PROPERTY + "=true");
+    command.add("-D" + FORKED_FLAGS_PROPERTY + "=" + String.join(" ", flags(flags)));
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(JvmArgsSweep.class.getName());
+    command.add(description.getClassName());
+    command.add(description.getMethodName());
+    configurationOverrides.forEach((name, values) -> command.add(name + "=" + values));
+
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    List<String> output = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(process.getInputStream(), Charset.defaultCharset()))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        output.add(line);
+      }
+    }
+    int exitCode = process.waitFor();
+    String result = output.stream().filter(line -> line.startsWith(RESULT_PREFIX)).findFirst().orElse(null);
+    if (exitCode != 0 || result == null) {
+      throw new IllegalStateException("JVM with " + label(flags) + " exited with code " + exitCode + ":\n"
+          + output.stream().skip(Math.max(output.size() - FAILURE_LINES, 0)).collect(joining("\n")));
+    }
+    String[] values = result.substring(RESULT_PREFIX.length()).split(" ");
+    List<String> details = new ArrayList<>();
+    output.stream().filter(line -> line.startsWith(DETAIL_PREFIX)).forEach(details::add);
+    return new Result(
+        Double.parseDouble(values[0]),
+        Double.parseDouble(values[1]),
+        Long.parseLong(values[2]),
+        Boolean.parseBoolean(values[3]),
+        details);
+  }
+
+  private static List<String> flags(String flags) {
+    return flags.trim().isEmpty() ? new ArrayList<>() : Arrays.asList(flags.trim().split("\\s+"));
+  }
+
+  private static String label(String flags) {
+    return flags.trim().isEmpty() ? "(default flags)" : String.join(" ", flags(flags));
+  }
+
+  private static String pad(String text, int width) {
+    StringBuilder padded = new StringBuilder(text);
+    while (padded.length() < width) {
+      padded.append(' ');
+    }
+    return padded.toString();
+  }
+
+  /**
+   * Runs a single benchmark in this JVM, then prints its results for the parent JVM to read.
+   *
+   * <p>Arguments: the benchmark's class name, its method name as given in its {@link Description}, then any
+   * configuration overrides, each as {@code NAME=V1,V2,...}.
+   */
+  public static void main(String[] args) throws Exception {
+    checkArgument(args.length >= 2, "Usage: JvmArgsSweep <class> <method> [NAME=V1,V2,...]...");
+    String methodName = args[1];
+    String method = methodName.split(" ", 2)[0];
+    Map<String, String> configurationOverrides = new LinkedHashMap<>();
+    for (String override : Arrays.asList(args).subList(2, args.length)) {
+      int equals = override.indexOf('=');
+      checkArgument(equals > 0, "Expected NAME=V1,V2,..., not %s", override);
+      configurationOverrides.put(override.substring(0, equals), override.substring(equals + 1));
+    }
+    BenchmarkRunner runner = new BenchmarkRunner(
+        Class.forName(args[0]), candidate -> candidate.getName().equals(method), configurationOverrides);
+    Description target = BenchmarkRunner.leaves(runner.getDescription())
+        .filter(leaf -> leaf.getMethodName().equals(methodName))
+        .findFirst()
+        .orElseThrow(() -> new IllegalArgumentException("No benchmark " + methodName + " in " + args[0]));
+    runner.filter(Filter.matchMethodDescription(target));
+
+    List<Failure> failures = new ArrayList<>();
+    RunNotifier notifier = new RunNotifier();
+    notifier.addListener(new RunListener() {
+      @Override
+      public void testFailure(Failure failure) {
+        failures.add(failure);
+      }
+
+      @Override
+      public void testAssumptionFailure(Failure failure) {
+        failures.add(failure);
+      }
+    });
+    runner.run(notifier);
+    if (!failures.isEmpty()) {
+      failures.forEach(failure -> System.out.println(failure.getTrace()));
+      System.exit(1);
+    }
+
+    SingleBenchmark benchmark = BenchmarkRunner.singleBenchmarks(runner)
+        .filter(candidate -> candidate.getDescription().equals(target))
+        .findFirst()
+        .get();
+    System.out.println(RESULT_PREFIX + benchmark.meanNanos() + " " + benchmark.errorNanos() + " "
+        + benchmark.allocatedBytes() + " " + benchmark.isStationary());
+    System.exit(0);
+  }
+}
@@ -0,0 +1,201 @@
+package org.alicep.benchmark;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.joining;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import org.alicep.benchmark.BenchmarkRunner.MinBenchmarkTime;
+import org.alicep.benchmark.BenchmarkRunner.MinSampleTime;
+import org.alicep.benchmark.BenchmarkRunner.MinSamples;
+import org.alicep.benchmark.BenchmarkRunner.TargetError;
+import org.junit.runner.Description;
+
+import com.google.common.base.CaseFormat;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * How long, and how precisely, to measure each benchmark, overridable at runtime without editing benchmark source.
+ *
+ * <p>Each setting is taken from the first of these to give it:
+ *
+ * <ul>
+ * <li>a system property, e.g. {@code -Dbenchmark.targetError=0.05}
+ * <li>an environment variable, e.g. {@code BENCHMARK_TARGET_ERROR=0.05}
+ * <li>the same key as the system property in a properties file, {@value #DEFAULT_FILE} in the working directory
+ *     unless the {@value #FILE_PROPERTY} system property names another
+ * <li>the selected profile, named by the {@value #PROFILE_PROPERTY} key in any of the above
+ * <li>the benchmark's {@link TargetError}, {@link MinBenchmarkTime}, {@link MinSamples} and {@link MinSampleTime}
+ *     annotations, or their defaults
+ * </ul>
+ *
+ * <p>Two profiles are built in, {@code quick} and {@code precise}; the properties file may define more, or change
+ * them, with keys like {@code benchmark.profile.nightly.targetError}.
+ */
+class MeasurementSettings {
+
+  static final String FILE_PROPERTY = "benchmark.settings";
+  static final String DEFAULT_FILE = "benchmark.properties";
+  static final String PROFILE_PROPERTY = "benchmark.profile";
+
+  private static final String TARGET_ERROR = "targetError";
+  private static final String MIN_BENCHMARK_TIME = "minBenchmarkTime";
+  private static final String MIN_SAMPLES = "minSamples";
+  private static final String MIN_SAMPLE_TIME = "minSampleTime";
+
+  private static final Map<String, Map<String, String>> BUILT_IN_PROFILES = ImmutableMap.of(
+      "quick", ImmutableMap.of(
+          TARGET_ERROR, "0.05",
+          MIN_BENCHMARK_TIME, "50",
+          MIN_SAMPLES, "3",
+          MIN_SAMPLE_TIME, "10"),
+      "precise", ImmutableMap.of(
+          TARGET_ERROR, "0.005",
+          MIN_BENCHMARK_TIME, "2000",
+          MIN_SAMPLES, "20",
+          MIN_SAMPLE_TIME, "100"));
+
+  private static final Supplier<MeasurementSettings> INSTANCE = Suppliers.memoize(() -> new MeasurementSettings(
+      System.getProperties(), System.getenv(), loadFile(System.getProperty(FILE_PROPERTY))));
+
+  /**
+   * Returns the settings for this JVM.
+   *
+   * @throws IllegalArgumentException if the settings file or profile named cannot be found
+   */
+  static MeasurementSettings instance() {
+    return INSTANCE.get();
+  }
+
+  private final Map<String, String> overrides = new LinkedHashMap<>();
+  private final Map<String, String> sources = new LinkedHashMap<>();
+  private final AtomicBoolean printed = new AtomicBoolean();
+
+  MeasurementSettings(Properties systemProperties, Map<String, String> environment, Properties file) {
+    String profile = lookup(PROFILE_PROPERTY, systemProperties, environment, file);
+    for (String setting : new String[] { TARGET_ERROR, MIN_BENCHMARK_TIME, MIN_SAMPLES, MIN_SAMPLE_TIME }) {
+      String key = "benchmark." + setting;
+      String value = lookup(key, systemProperties, environment, file);
+      if (value != null) {
+        overrides.put(setting, value);
+        sources.put(setting, source(key, systemProperties, environment));
+      } else if (profile != null) {
+        value = file.getProperty(PROFILE_PROPERTY + "." + profile + "." + setting);
+        if (value == null) {
+          Map<String, String> builtIn = BUILT_IN_PROFILES.get(profile);
+          checkArgument(builtIn != null || file.stringPropertyNames().stream()
+                  .anyMatch(name -> name.startsWith(PROFILE_PROPERTY + "." + profile + ".")),
+              "Unknown benchmark profile %s; expected one of %s, or one defined in %s",
+              profile, BUILT_IN_PROFILES.keySet(), DEFAULT_FILE);
+          value = (builtIn == null) ? null : builtIn.get(setting);
+        }
+        if (value != null) {
+          overrides.put(setting, value);
+          sources.put(setting, "profile " + profile);
+        }
+      }
+    }
+  }
+
+  double targetError(Description description) {
+    double targetError = get(TARGET_ERROR, Double::parseDouble, description.getAnnotation(TargetError.class).value());
+    checkArgument(targetError > 0, "Target error must be positive, not %s", targetError);
+    return targetError;
+  }
+
+  long minBenchmarkMillis(Description description) {
+    return get(MIN_BENCHMARK_TIME, Long::parseLong, description.getAnnotation(MinBenchmarkTime.class).millis());
+  }
+
+  int minSamples(Description description) {
+    return get(MIN_SAMPLES, Integer::parseInt, description.getAnnotation(MinSamples.class).value());
+  }
+
+  long minSampleMillis(Description description) {
+    return get(MIN_SAMPLE_TIME, Long::parseLong, description.getAnnotation(MinSampleTime.class).millis());
+  }
+
+  /**
+   * Prints the settings overridden at runtime, the first time it is called, so results can be interpreted later.
+   */
+  void printOverridesOnce() {
+    if (!overrides.isEmpty() && printed.compareAndSet(false, true)) {
+      System.out.println("Measurement settings overridden: " + overrides.entrySet()
+          .stream()
+          .map(entry -> entry.getKey() + "=" + entry.getValue() + " (" + sources.get(entry.getKey()) + ")")
+          .collect(joining(", ")));
+      System.out.println();
+    }
+  }
+
+  private <T> T get(String setting, Function<String, T> parser, T annotated) {
+    String value = overrides.get(setting);
+    if (value == null) {
+      return annotated;
+    }
+    try {
+      return parser.apply(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          "Invalid " + setting + " \"" + value + "\" from " + sources.get(setting), e);
+    }
+  }
+
+  private static String lookup(
+      String key,
+      Properties systemProperties,
+      Map<String, String> environment,
+      Properties file) {
+    String value = systemProperties.getProperty(key);
+    if (value == null) {
+      value = environment.get(environmentVariable(key));
+    }
+    if (value == null) {
+      value = file.getProperty(key);
+    }
+    return value;
+  }
+
+  private static String source(String key, Properties systemProperties, Map<String, String> environment) {
+    if (systemProperties.getProperty(key) != null) {
+      return "system property";
+    } else if (environment.get(environmentVariable(key)) != null) {
+      return "environment variable " + environmentVariable(key);
+    } else {
+      return "settings file";
+    }
+  }
+
+  /**
+   * Converts, say, {@code benchmark.targetError} to {@code BENCHMARK_TARGET_ERROR}.
+   */
+  private static String environmentVariable(String key) {
+    return CaseFormat.LOWER_CAMEL.to(CaseFormat.UPPER_UNDERSCORE, key.replace('.', '_'));
+  }
+
+  private static Properties loadFile(String name) {
+    Path file = Paths.get((name == null) ? DEFAULT_FILE : name);
+    Properties properties = new Properties();
+    if (name == null && !Files.exists(file)) {
+      return properties;
+    }
+    try (Reader reader = Files.newBufferedReader(file, UTF_8)) {
+      properties.load(reader);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Cannot read benchmark settings from " + file, e);
+    }
+    return properties;
+  }
+}
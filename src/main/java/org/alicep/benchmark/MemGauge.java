@@ -28,16 +28,13 @@ public class MemGauge {
   public static <E extends Throwable>
       Bytes memoryConsumption(CheckedRunnable<E> command) throws E, InterruptedException {
     long[] estimates = new long[5];
-    try (EdenMonitor monitor = EdenMonitor.create()) {
+    try (AllocationMonitor monitor = AllocationMonitor.forAllThreads()) {
       System.gc();
       monitor.sample();
 
-      // Java rounds all allocations to a multiple of Long.BYTES
-      // Our measurements are rounded up to a multiple PENDING_OVERHEAD_BYTES
-      // So repeat command a few times to get byte-level accuracy
-      int repeats = EdenMonitor.SAMPLE_ERROR_BYTES / Long.BYTES;
-
       for (int i = 0; i < estimates.length; i++) {
+        // Repeat command enough times to get byte-level accuracy
+        int repeats = monitor.samplingRepeats();
         for (int j = 0; j < repeats; ++j) {
           sink = command.run();
           sink = null;
@@ -1,9 +1,14 @@
 package org.alicep.benchmark;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.Arrays.stream;
 
 import java.io.InterruptedIOException;
 import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
 import java.util.stream.LongStream;
 
 public class MemoryAssertions {
@@ -11,10 +16,19 @@ public class MemoryAssertions {
   /**
    * Fluent API for asserting how much memory is allocated or returned by {@code runnable}.
    *
-   * <p>Successful allocation tests will typically execute {@code runnable} 31 times, though extreme flakiness may
-   * trigger further runs. To avoid flakiness, tests will only fail if 5 samples (each averaging 6 executions) all fail
-   * the input assertion. Unsuccessful tests will run around twelve hundred times and include a recommendation for a
-   * non-flaky assertion that could be used in future.
+   * <p>Allocations made by any thread while {@code runnable} executes are counted, including unrelated background
+   * threads (see {@link #assertThatRunningOnCallingThread} and {@link #assertThatRunningConcurrently} to exclude them).
+   * Where the JVM supports it, the allocation counters of all live threads are summed, which is accurate to the byte:
+   * successful allocation tests will typically execute {@code runnable} just 6 times, and unsuccessful ones 41 times.
+   * Samples spanning a thread exiting are discarded, and if that happens twice, Eden space usage is watched instead,
+   * which is only accurate to within 48 bytes. On JVMs without per-thread counters, Eden is watched from the start,
+   * with each sample averaging 6 executions, so successful allocation tests will typically execute {@code runnable} 31
+   * times. On JVMs where neither can be read, the calling thread's allocation counter is read instead.
+   *
+   * <p>Samples are fed into a sequential probability ratio test, which stops as soon as the evidence is decisive
+   * either way; tests will never fail on fewer than 5 samples, and will fail falsely at most 0.1% of the time (see
+   * {@link #withFalseFailureRate(double)}). Unsuccessful tests watching Eden will typically run around 240 times; all
+   * unsuccessful tests include a recommendation for a non-flaky assertion that could be used in future.
    *
    * <p>The number of times a return size test takes depends on any background tasks running on the JVM, but is
    * typically 8–16 runs. If no result is determined after 1024 iterations, the assertion will fail.
@@ -23,9 +37,65 @@ public class MemoryAssertions {
    * @return fluent API instance
    */
   public static MemoryAssertions assertThatRunning(ThrowingRunnable runnable) {
-    return new MemoryAssertions(runnable).runOnce();
+    return new MemoryAssertions(runnable, AllocationMonitor::forAllThreads).runOnce();
+  }
+
+  /**
+   * Fluent API for asserting how much memory is allocated or returned by {@code runnable}, counting only allocations
+   * made by the calling thread.
+   *
+   * <p>Allocations are read from the calling thread's allocation counter where the JVM supports it, so other threads
+   * allocating in the background do not add noise, and measurements are accurate to the byte: successful allocation
+   * tests will typically execute {@code runnable} just 6 times, and unsuccessful ones 41 times. Any work
+   * {@code runnable} hands off to other threads is not counted (see {@link #assertThatRunningConcurrently}). On JVMs
+   * without usable per-thread counters, this behaves like {@link #assertThatRunning}.
+   *
+   * @param runnable the method to test
+   * @return fluent API instance
+   */
+  public static MemoryAssertions assertThatRunningOnCallingThread(ThrowingRunnable runnable) {
+    return new MemoryAssertions(runnable, AllocationMonitor::forCurrentThread).runOnce();
+  }
+
+  /**
+   * Fluent API for asserting how much memory is allocated or returned by {@code runnable}, including any work it hands
+   * off to the {@link Executor} it is passed.
+   *
+   * <p>Allocations are attributed per thread rather than read from Eden, so other threads allocating in the background
+   * do not add noise. Work submitted to the executor is counted on whichever thread runs it, and each execution waits
+   * for all submitted work to complete before being sampled. Work must only be submitted from the calling thread or
+   * from other submitted work.
+   *
+   * <p>Per-thread measurements are accurate to the byte where the JVM's counters are precise, so successful allocation
+   * tests will typically execute {@code runnable} just 6 times. Elsewhere, each sample averages 6 executions, as when
+   * watching Eden.
+   *
+   * @param executor the executor to run submitted work on
+   * @param runnable the method to test
+   * @return fluent API instance
+   */
+  public static MemoryAssertions assertThatRunningConcurrently(
+      Executor executor,
+      ThrowingConcurrentRunnable runnable) {
+    AllocationTrackingExecutor trackingExecutor = new AllocationTrackingExecutor(executor);
+    ThrowingRunnable task = () -> {
+      Object result = runnable.run(trackingExecutor);
+      trackingExecutor.awaitQuiescence();
+      return result;
+    };
+    return new MemoryAssertions(task, () -> new ThreadAllocationMonitor(trackingExecutor)).runOnce();
   }
 
+  private interface MonitorFactory {
+    AllocationMonitor create() throws InterruptedException;
+  }
+
+  private static final double DEFAULT_FALSE_FAILURE_RATE = 0.001;
+  private static final int MIN_SAMPLES = 5;
+  private static final int MAX_SAMPLES = 200;
+  private static final int MAX_NOISY_SAMPLES = 20;
+  private static final int SUGGESTION_SAMPLES = 40;
+
   /**
    * Used to prevent HotSpot optimizing away unused objects. Volatile just to be certain.
    */
@@ -33,12 +103,15 @@ public class MemoryAssertions {
   private static volatile Object sink;
 
   private final ThrowingRunnable runnable;
-  private long[] allocations = new long[5];
-  private int runs = 0;
+  private final MonitorFactory monitorFactory;
+  private final long[] allocations = new long[MAX_SAMPLES];
+  private int samples = 0;
+  private double falseFailureRate = DEFAULT_FALSE_FAILURE_RATE;
   private String description = null;
 
-  private MemoryAssertions(ThrowingRunnable runnable) {
+  private MemoryAssertions(ThrowingRunnable runnable, MonitorFactory monitorFactory) {
     this.runnable = runnable;
+    this.monitorFactory = monitorFactory;
   }
 
   public MemoryAssertions describedAs(String description) {
@@ -46,22 +119,27 @@ public class MemoryAssertions {
     return this;
   }
 
+  /**
+   * Sets the probability that an allocation assertion fails despite holding, due to measurement noise.
+   *
+   * <p>Lower rates make failing assertions take a few more samples to reject. Defaults to 0.1%.
+   *
+   * @param falseFailureRate probability of a false failure, between 0 and 0.5 exclusive
+   * @return this fluent API instance
+   */
+  public MemoryAssertions withFalseFailureRate(double falseFailureRate) {
+    checkArgument(falseFailureRate > 0 && falseFailureRate < 0.5, "False failure rate must be in (0, 0.5)");
+    this.falseFailureRate = falseFailureRate;
+    return this;
+  }
+
   /**
    * Assert the runnable makes no stack allocations.
    *
    * @return this fluent API instance
    */
   public MemoryAssertions makesNoStackAllocations() {
-    sample();
-    if (allocations.length == 5 && allocations[1] != 0) {
-      allocations = Arrays.copyOf(allocations, 25);
-      sample();
-    }
-    if (allocations.length == 25 && allocations[14] != 0) {
-      allocations = Arrays.copyOf(allocations, 200);
-      sample();
-    }
-    if (allocations.length == 200 && allocations[160] != 0) {
+    if (!passes(bytes -> bytes == 0)) {
       StringBuilder message = new StringBuilder();
       if (description != null) {
         message.append(description).append(": ");
@@ -80,16 +158,7 @@ public class MemoryAssertions {
    * @return this fluent API instance
    */
   public MemoryAssertions allocates(Bytes bytes) {
-    sample();
-    if (allocations.length == 5 && !matches(allocations[1], bytes)) {
-      allocations = Arrays.copyOf(allocations, 25);
-      sample();
-    }
-    if (allocations.length == 25 && !(matches(allocations[6], bytes) && matches(allocations[14], bytes))) {
-      allocations = Arrays.copyOf(allocations, 200);
-      sample();
-    }
-    if (allocations.length == 200 && !(matches(allocations[40], bytes) && matches(allocations[160], bytes))) {
+    if (!passes(allocated -> matches(allocated, bytes))) {
       StringBuilder message = new StringBuilder();
       if (description != null) {
         message.append(description).append(": ");
@@ -108,16 +177,7 @@ public class MemoryAssertions {
    * @return this fluent API instance
    */
   public MemoryAssertions allocatesAtMost(Bytes bytes) {
-    sample();
-    if (allocations.length == 5 && !atMost(allocations[1], bytes)) {
-      allocations = Arrays.copyOf(allocations, 25);
-      sample();
-    }
-    if (allocations.length == 25 && !atMost(allocations[14], bytes)) {
-      allocations = Arrays.copyOf(allocations, 200);
-      sample();
-    }
-    if (allocations.length == 200 && !atMost(allocations[160], bytes)) {
+    if (!passes(allocated -> atMost(allocated, bytes))) {
       StringBuilder message = new StringBuilder();
       if (description != null) {
         message.append(description).append(": ");
@@ -137,16 +197,7 @@ public class MemoryAssertions {
    * @return this fluent API instance
    */
   public MemoryAssertions allocatesBetween(Bytes minBytes, Bytes maxBytes) {
-    sample();
-    if (allocations.length == 5 && !(atLeast(allocations[1], minBytes) && atMost(allocations[1], maxBytes))) {
-      allocations = Arrays.copyOf(allocations, 25);
-      sample();
-    }
-    if (allocations.length == 25 && !(atLeast(allocations[6], minBytes) && atMost(allocations[14], maxBytes))) {
-      allocations = Arrays.copyOf(allocations, 200);
-      sample();
-    }
-    if (allocations.length == 200 && !(atLeast(allocations[40], minBytes) && atMost(allocations[160], maxBytes))) {
+    if (!passes(allocated -> atLeast(allocated, minBytes) && atMost(allocated, maxBytes))) {
       StringBuilder message = new StringBuilder();
       if (description != null) {
         message.append(description).append(": ");
@@ -209,18 +260,24 @@ public class MemoryAssertions {
   }
 
   private void suggestCheck(StringBuilder message) {
-    Bytes min = Bytes.bytes(allocations[20]);
-    Bytes max = Bytes.bytes(allocations[180]);
+    sampleAtLeast(SUGGESTION_SAMPLES);
+    long[] sorted = Arrays.copyOf(allocations, samples);
+    Arrays.sort(sorted);
+    long low = sorted[sorted.length / 10];
+    long median = sorted[sorted.length / 2];
+    long high = sorted[sorted.length - 1 - sorted.length / 10];
+    Bytes min = Bytes.bytes(low);
+    Bytes max = Bytes.bytes(high);
     message.append(" but ");
-    if (allocations[180] == 0) {
-      long percentageZero = LongStream.of(allocations).filter(n -> n <= 0).count() / 2;
+    if (high == 0) {
+      long percentageZero = 100 * LongStream.of(sorted).filter(n -> n <= 0).count() / sorted.length;
       message.append(percentageZero).append("% of runs allocated no memory\n")
           .append("Consider using .makesNoStackAllocations()");
-    } else if (allocations[20] == 0) {
+    } else if (low == 0) {
       message.append("90% of runs used at most ").append(max).append("\n")
           .append("Consider using .allocatesAtMost(").append(max.suggestedConstructor()).append(")");
-    } else if (allocations[20] == allocations[180]) {
-      long percentageSame = stream(allocations).filter(x -> x == allocations[100]).count() / 2;
+    } else if (low == high) {
+      long percentageSame = 100 * stream(sorted).filter(x -> x == median).count() / sorted.length;
       message.append(percentageSame).append("% of runs allocated ").append(max).append("\n")
           .append("Consider using .allocates(").append(max.suggestedConstructor()).append(")");
     } else {
@@ -230,36 +287,57 @@ public class MemoryAssertions {
     }
   }
 
-  private void sample() {
-    if (runs == allocations.length) {
+  /**
+   * Returns whether samples pass {@code check}, replaying any samples already taken before taking more.
+   */
+  private boolean passes(LongPredicate check) {
+    SequentialTest test = new SequentialTest(falseFailureRate, MIN_SAMPLES);
+    for (int i = 0; i < samples && !test.isDecided(); ++i) {
+      test.add(check.test(allocations[i]));
+    }
+    if (!test.isDecided()) {
+      sample(() -> !test.isDecided() && samples < MAX_SAMPLES, allocated -> test.add(check.test(allocated)));
+      test.truncate();
+    }
+    return test.passed();
+  }
+
+  private void sampleAtLeast(int minSamples) {
+    sample(() -> samples < minSamples, allocated -> { });
+  }
+
+  private void sample(BooleanSupplier moreNeeded, LongConsumer onSample) {
+    if (!moreNeeded.getAsBoolean()) {
       return;
     }
-    try (EdenMonitor monitor = EdenMonitor.create()) {
+    try (AllocationMonitor monitor = monitorFactory.create()) {
       monitor.sample();
 
-      // Java rounds all allocations to a multiple of Long.BYTES
-      // Our measurements are rounded up to a multiple of SAMPLE_ERROR_BYTES
-      // So repeat command a few times to get byte-level accuracy
-      int repeats = EdenMonitor.SAMPLE_ERROR_BYTES / Long.BYTES;
-
-      for (; runs < allocations.length; runs++) {
+      // Repeat command enough times to get byte-level accuracy
+      int noisySamples = 0;
+      while (moreNeeded.getAsBoolean()) {
+        int repeats = monitor.samplingRepeats();
         for (int j = 0; j < repeats; ++j) {
           sink = runnable.run();
           sink = null;
         }
 
         // Estimate how much memory command consumed
-        allocations[runs] = (monitor.sample() / repeats) & ~7L;
+        long allocated = (monitor.sample() / repeats) & ~7L;
 
-        // If the data looks sketchy, take more samples
-        if (runs == 4) {
-          Arrays.sort(allocations);
-          if ((allocations[0] != allocations[1] && allocations[1] != allocations[2]) || allocations[1] < 0) {
-            allocations = Arrays.copyOf(allocations, 25);
-            System.gc();
-            monitor.sample();
+        // Discard impossible samples, and try to clear out whatever caused them
+        if (allocated < 0) {
+          noisySamples++;
+          if (noisySamples > MAX_NOISY_SAMPLES) {
+            throw new AssertionError("Too much noise; could not sample allocations");
           }
+          System.gc();
+          monitor.sample();
+          continue;
         }
+
+        allocations[samples++] = allocated;
+        onSample.accept(allocated);
       }
     } catch (RuntimeException | Error e) {
       throw e;
@@ -269,10 +347,6 @@ public class MemoryAssertions {
       }
       throw new AssertionError(e);
     }
-    Arrays.sort(allocations);
-    if (allocations.length == 200 && allocations[20] < 0) {
-      throw new AssertionError("Too much noise; could not sample allocations");
-    }
   }
 
   private MemoryAssertions runOnce() {
@@ -15,6 +15,7 @@ class Nanos {
       .put(-9, "ns")
       .put(-12, "ps")
       .build();
+  private static final String[] RATE_SCALES = { "", "k", "M", "G", "T" };
 
   public static String foramtNanos(long nanos) {
     return formatNanos((double) nanos);
@@ -48,4 +49,33 @@ class Nanos {
       return String.format("%se%d s", significand, scale);
     }
   }
+
+  /**
+   * Formats the throughput of an operation taking {@code nanos}, e.g. "1.76M ops/s".
+   */
+  public static String formatThroughput(double nanos) {
+    checkArgument(nanos > 0);
+    return formatRate(1e9 / nanos);
+  }
+
+  /**
+   * Formats a rate in operations per second, e.g. "1.76M ops/s".
+   */
+  public static String formatRate(double perSecond) {
+    checkArgument(perSecond >= 0);
+    int scale = 0;
+    while (perSecond >= 999.5 && scale < RATE_SCALES.length - 1) {
+      perSecond /= 1000;
+      scale++;
+    }
+    String significand;
+    if (perSecond < 9.995) {
+      significand = String.format("%.2f", perSecond);
+    } else if (perSecond < 99.95) {
+      significand = String.format("%.1f", perSecond);
+    } else {
+      significand = Long.toString(Math.round(perSecond));
+    }
+    return significand + RATE_SCALES[scale] + " ops/s";
+  }
 }
@@ -2,11 +2,16 @@ package org.alicep.benchmark;
 
 import static java.util.Arrays.stream;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.management.GarbageCollectorMXBean;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 import javax.management.ListenerNotFoundException;
@@ -38,17 +43,58 @@ class Notifications {
   }
 
   public static boolean isCollectionNotification(Object notification) {
-    return "com.sun.management.gc.notification".equals(Notifications.get(notification, "type"));
+    Accessors accessors = accessors(notification);
+    try {
+      return "com.sun.management.gc.notification".equals((Object) accessors.type.invokeExact(notification));
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new RuntimeException(t);
+    }
   }
 
   public static long getCollectionId(Object notification) {
-    return (long) Notifications.get(notification, "userData", "gcInfo", "id");
+    Accessors accessors = accessors(notification);
+    MethodHandle collectionId = accessors.collectionId;
+    if (collectionId == null) {
+      collectionId = resolve(notification, long.class, "userData", "gcInfo", "id");
+      accessors.collectionId = collectionId;
+    }
+    try {
+      return (long) collectionId.invokeExact(notification);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new RuntimeException(t);
+    }
+  }
+
+  public static long getUsedBefore(Object notification, String pool) {
+    return getUsed(notification, pool, 0);
+  }
+
+  public static long getUsedAfter(Object notification, String pool) {
+    return getUsed(notification, pool, 1);
   }
 
-  public static long getFreedMemory(Object notification, String pool) {
-    long before = (long) Notifications.get(notification, "userData", "gcInfo", "memoryUsageBeforeGc", pool, "used");
-    long after = (long) Notifications.get(notification, "userData", "gcInfo", "memoryUsageAfterGc", pool, "used");
-    return before - after;
+  private static long getUsed(Object notification, String pool, int when) {
+    Accessors accessors = accessors(notification);
+    MethodHandle[] used = accessors.poolUsage.get(pool);
+    if (used == null) {
+      // Not computeIfAbsent, whose lambda would capture notification, allocating on every call
+      used = new MethodHandle[] {
+          resolve(notification, long.class, "userData", "gcInfo", "memoryUsageBeforeGc", pool, "used"),
+          resolve(notification, long.class, "userData", "gcInfo", "memoryUsageAfterGc", pool, "used")
+      };
+      accessors.poolUsage.putIfAbsent(pool, used);
+    }
+    try {
+      return (long) used[when].invokeExact(notification);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new RuntimeException(t);
+    }
   }
 
   public static void removeNotificationListener(GarbageCollectorMXBean bean, Object listener)
@@ -70,30 +116,97 @@ class Notifications {
     }
   }
 
-  private static Object get(Object object, String... path) {
+  /**
+   * Accessors resolved for one notification class, so GC notifications can be read without repeated reflection.
+   */
+  private static class Accessors {
+    final MethodHandle type;
+    volatile MethodHandle collectionId;
+    final Map<String, MethodHandle[]> poolUsage = new ConcurrentHashMap<>();
+
+    Accessors(Object notification) {
+      type = resolve(notification, Object.class, "type");
+    }
+  }
+
+  private static final Map<Class<?>, Accessors> ACCESSORS = new ConcurrentHashMap<>();
+  private static final int WARM_UP_INVOCATIONS = 256;
+
+  private static Accessors accessors(Object notification) {
+    Accessors accessors = ACCESSORS.get(notification.getClass());
+    if (accessors == null) {
+      accessors = ACCESSORS.computeIfAbsent(notification.getClass(), cls -> new Accessors(notification));
+    }
+    return accessors;
+  }
+
+  /**
+   * Returns a handle that walks {@code path} from objects shaped like {@code object}, returning {@code returnType}.
+   *
+   * <p>Each key is looked up with {@code get(String)} (e.g. on {@code CompositeData}), else {@code get(Object[])}
+   * followed by {@code get("value")} (e.g. on {@code TabularData}), else a bean getter.
+   */
+  private static MethodHandle resolve(Object object, Class<?> returnType, String... path) {
+    MethodHandle chain = MethodHandles.identity(Object.class);
     Object result = object;
-    for (String key : path) {
-      try {
-        try {
-          Method method = result.getClass().getMethod("get", String.class);
-          result = method.invoke(result, key);
-        } catch (NoSuchMethodException e1) {
-          try {
-            Method method = result.getClass().getMethod("get", Object[].class);
-            result = method.invoke(result, (Object) new Object[] { key });
-            method = result.getClass().getMethod("get", String.class);
-            result = method.invoke(result, "value");
-          } catch (NoSuchMethodException e2) {
-            String getterName = "get" + key.substring(0, 1).toUpperCase() + key.substring(1);
-            Method method = result.getClass().getMethod(getterName);
-            result = method.invoke(result);
-          }
+    try {
+      for (String key : path) {
+        MethodHandle step = resolveStep(result.getClass(), key);
+        result = (Object) step.invokeExact(result);
+        chain = MethodHandles.filterReturnValue(chain, step);
+      }
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new RuntimeException(t);
+    }
+    MethodHandle accessor = chain.asType(MethodType.methodType(returnType, Object.class));
+    warmUp(accessor, object);
+    return accessor;
+  }
+
+  /**
+   * Invokes {@code accessor} past the JDK's customization threshold, so any LambdaForm classes are spun now, rather
+   * than allocating on the heap partway through a measurement.
+   */
+  private static void warmUp(MethodHandle accessor, Object object) {
+    try {
+      // Must match the call sites' exact types, or an adapted handle will be customized instead
+      for (int i = 0; i < WARM_UP_INVOCATIONS; ++i) {
+        if (accessor.type().returnType() == long.class) {
+          long unused = (long) accessor.invokeExact(object);
+        } else {
+          Object unused = (Object) accessor.invokeExact(object);
         }
-      } catch (ReflectiveOperationException e) {
-        throw new RuntimeException(e);
       }
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new RuntimeException(t);
     }
-    return result;
+  }
+
+  private static MethodHandle resolveStep(Class<?> cls, String key) throws ReflectiveOperationException {
+    MethodType objectToObject = MethodType.methodType(Object.class, Object.class);
+    try {
+      MethodHandle get = unreflect(cls.getMethod("get", String.class));
+      return MethodHandles.insertArguments(get, 1, key).asType(objectToObject);
+    } catch (NoSuchMethodException e1) {
+      try {
+        MethodHandle row = MethodHandles.insertArguments(
+            unreflect(cls.getMethod("get", Object[].class)), 1, (Object) new Object[] { key });
+        MethodHandle value = MethodHandles.insertArguments(
+            unreflect(row.type().returnType().getMethod("get", String.class)), 1, "value");
+        return MethodHandles.filterReturnValue(row, value).asType(objectToObject);
+      } catch (NoSuchMethodException e2) {
+        String getterName = "get" + key.substring(0, 1).toUpperCase() + key.substring(1);
+        return unreflect(cls.getMethod(getterName)).asType(objectToObject);
+      }
+    }
+  }
+
+  private static MethodHandle unreflect(Method method) throws IllegalAccessException {
+    return MethodHandles.publicLookup().unreflect(method);
   }
 
   private static class ListenerHandler implements InvocationHandler {
@@ -4,16 +4,17 @@ import static com.google.common.base.Preconditions.checkState;
 import static java.lang.management.ManagementFactory.getGarbageCollectorMXBeans;
 import static org.alicep.benchmark.Notifications.addNotificationListener;
 import static org.alicep.benchmark.Notifications.getCollectionId;
-import static org.alicep.benchmark.Notifications.getFreedMemory;
+import static org.alicep.benchmark.Notifications.getUsedAfter;
+import static org.alicep.benchmark.Notifications.getUsedBefore;
 import static org.alicep.benchmark.Notifications.isCollectionNotification;
 import static org.alicep.benchmark.Notifications.removeNotificationListener;
 
 import java.io.Closeable;
 import java.lang.management.GarbageCollectorMXBean;
 import java.util.Arrays;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.management.ListenerNotFoundException;
 
@@ -32,17 +33,70 @@ class ReclamationsQueue implements Closeable {
     return new ReclamationsQueue(collectorBean, pool);
   }
 
-  private final BlockingQueue<Object> notifications = new LinkedBlockingDeque<>();
+  /**
+   * How many collection results can be buffered before further ones are dropped. Must be a power of two.
+   */
+  private static final int CAPACITY = 1024;
+
+  /**
+   * How many times to yield to the notifying thread before parking.
+   */
+  private static final int SPINS = 100;
+
+  private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2);
+
   private final GarbageCollectorMXBean collectorBean;
   private final String pool;
   private long lastCollection;
   private final Object listener;
 
+  /*
+   * Single-producer, single-consumer ring buffer of collection results, decoded on the notifying thread so neither
+   * side allocates and the queue never retains a notification. Slot i holds result number i modulo CAPACITY.
+   */
+  private final long[] collectionIds = new long[CAPACITY];
+  private final long[] usedBefore = new long[CAPACITY];
+  private final long[] usedAfter = new long[CAPACITY];
+  private final AtomicLong published = new AtomicLong();
+  private final AtomicLong consumed = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private volatile Thread waiter;
+
+  /*
+   * Number of collection results the listener has finished handling. Written last, after waking any waiter, so once
+   * it reaches a result's sequence number the listener no longer references that result's notification (some 10kB).
+   * The JDK's dispatching thread may still hold it until the listener returns, so a collection triggered afterwards
+   * is less likely, but not guaranteed, to skip it.
+   */
+  private volatile long handled;
+
   private ReclamationsQueue(GarbageCollectorMXBean collectorBean, String pool) {
     this.collectorBean = collectorBean;
     this.pool = pool;
     this.lastCollection = collectorBean.getCollectionCount();
-    listener = addNotificationListener(collectorBean, notifications::add);
+    listener = addNotificationListener(collectorBean, this::handleNotification);
+  }
+
+  private void handleNotification(Object notification) {
+    if (!isCollectionNotification(notification)) {
+      return;
+    }
+    long next = published.get();
+    if (next - consumed.get() == CAPACITY) {
+      dropped.incrementAndGet();
+      return;
+    }
+    int slot = (int) next & (CAPACITY - 1);
+    collectionIds[slot] = getCollectionId(notification);
+    usedBefore[slot] = getUsedBefore(notification, pool);
+    usedAfter[slot] = getUsedAfter(notification, pool);
+    // A full volatile write, so the read of waiter below cannot be reordered before it and miss a parked consumer
+    published.set(next + 1);
+    Thread consumer = waiter;
+    if (consumer != null) {
+      LockSupport.unpark(consumer);
+    }
+    handled = next + 1;
   }
 
   /**
@@ -59,42 +113,84 @@ class ReclamationsQueue implements Closeable {
    * values can be positive or negative.
    *
    * @throws IllegalStateException if no collection occurred since the last one dequeued
-   * @throws AssertionError if the internal listener is not reporting back collection results in a timely manner
+   * @throws AssertionError if the internal listener is not reporting back collection results in a timely manner, or
+   *     more collections occurred than could be buffered since results were last dequeued
    */
   public long nextReclaimed() throws InterruptedException {
     checkState(lastCollection != collectorBean.getCollectionCount());
-    Object notification;
-    do {
-      notification = notifications.poll(2, TimeUnit.SECONDS);
-      if (notification == null) {
-        throw new AssertionError("BlockingCollectionQueue listener not responding");
-      }
-    } while (!isCollectionNotification(notification));
-
-    lastCollection = getCollectionId(notification);
-    return getFreedMemory(notification, pool);
+    return take();
   }
 
   /**
    * Returns the amount of memory reclaimed by the most recent collection.
    *
    * @throws IllegalStateException if no collection occurred since the last one dequeued
-   * @throws AssertionError if the internal listener is not reporting back collection results in a timely manner
+   * @throws AssertionError if the internal listener is not reporting back collection results in a timely manner, or
+   *     more collections occurred than could be buffered since results were last dequeued
    */
   public long lastReclaimed() throws InterruptedException {
     long collection = collectorBean.getCollectionCount();
     checkState(lastCollection != collection);
-    Object notification;
+    long reclaimed;
     do {
-      do {
-        notification = notifications.poll(2, TimeUnit.SECONDS);
-        if (notification == null) {
-          throw new AssertionError("BlockingCollectionQueue listener not responding");
-        }
-      } while (!isCollectionNotification(notification));
-      lastCollection = getCollectionId(notification);
+      reclaimed = take();
     } while (lastCollection != collection);
-    return getFreedMemory(notification, pool);
+    awaitHandled();
+    return reclaimed;
+  }
+
+  /**
+   * Waits, without allocating, until the listener has finished handling every result dequeued.
+   */
+  private void awaitHandled() throws InterruptedException {
+    long target = consumed.get();
+    long deadline = System.nanoTime() + TIMEOUT_NANOS;
+    while (handled < target) {
+      if (System.nanoTime() > deadline) {
+        throw new AssertionError("ReclamationsQueue listener not responding");
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      Thread.yield();
+    }
+  }
+
+  /**
+   * Dequeues the next collection result, updating {@link #lastCollection} and returning the memory reclaimed.
+   *
+   * <p>Yields to the notifying thread for a while, then parks until it publishes, without allocating.
+   */
+  private long take() throws InterruptedException {
+    long dropCount = dropped.getAndSet(0);
+    if (dropCount != 0) {
+      throw new AssertionError(dropCount + " collection results dropped; sample more often");
+    }
+    long next = consumed.get();
+    long deadline = System.nanoTime() + TIMEOUT_NANOS;
+    for (int spins = 0; published.get() == next; ++spins) {
+      if (spins < SPINS) {
+        Thread.yield();
+        continue;
+      }
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        throw new AssertionError("ReclamationsQueue listener not responding");
+      }
+      waiter = Thread.currentThread();
+      if (published.get() == next) {
+        LockSupport.parkNanos(this, remaining);
+      }
+      waiter = null;
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+    int slot = (int) next & (CAPACITY - 1);
+    lastCollection = collectionIds[slot];
+    long reclaimed = usedBefore[slot] - usedAfter[slot];
+    consumed.lazySet(next + 1);
+    return reclaimed;
   }
 
   @Override
@@ -0,0 +1,85 @@
+package org.alicep.benchmark;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.Math.log;
+
+/**
+ * Wald's sequential probability ratio test over a stream of pass/fail samples.
+ *
+ * <p>Decides between "the check holds, bar occasional measurement noise" (samples fail at most
+ * {@link #NOISE_FAILURE_RATE} of the time) and "the check does not hold" (samples fail at least
+ * {@link #BROKEN_FAILURE_RATE} of the time), stopping as soon as the evidence is decisive either way.
+ */
+class SequentialTest {
+
+  /**
+   * Failure rate of samples expected from a correct check, due to noise.
+   */
+  static final double NOISE_FAILURE_RATE = 0.1;
+
+  /**
+   * Failure rate of samples expected from an incorrect check.
+   */
+  static final double BROKEN_FAILURE_RATE = 0.6;
+
+  /**
+   * Probability of passing an incorrect check.
+   */
+  static final double FALSE_PASS_RATE = 0.05;
+
+  private static final double PASS_WEIGHT = log((1 - BROKEN_FAILURE_RATE) / (1 - NOISE_FAILURE_RATE));
+  private static final double FAIL_WEIGHT = log(BROKEN_FAILURE_RATE / NOISE_FAILURE_RATE);
+
+  private final int minSamples;
+  private final double passBound;
+  private final double failBound;
+  private double logLikelihoodRatio = 0.0;
+  private int samples = 0;
+  private Boolean passed = null;
+
+  /**
+   * @param falseFailureRate probability of failing a correct check
+   * @param minSamples samples to take before deciding, however decisive the evidence
+   */
+  SequentialTest(double falseFailureRate, int minSamples) {
+    checkArgument(falseFailureRate > 0 && falseFailureRate < 0.5, "False failure rate must be in (0, 0.5)");
+    this.minSamples = minSamples;
+    this.passBound = log(FALSE_PASS_RATE / (1 - falseFailureRate));
+    this.failBound = log((1 - FALSE_PASS_RATE) / falseFailureRate);
+  }
+
+  /**
+   * Adds a sample, deciding the test if the evidence is now decisive.
+   */
+  void add(boolean samplePassed) {
+    checkState(!isDecided(), "Test already decided");
+    logLikelihoodRatio += samplePassed ? PASS_WEIGHT : FAIL_WEIGHT;
+    samples++;
+    if (samples >= minSamples) {
+      if (logLikelihoodRatio <= passBound) {
+        passed = true;
+      } else if (logLikelihoodRatio >= failBound) {
+        passed = false;
+      }
+    }
+  }
+
+  boolean isDecided() {
+    return passed != null;
+  }
+
+  /**
+   * Decides the test on the evidence so far, favouring whichever hypothesis is more likely.
+   */
+  void truncate() {
+    if (!isDecided()) {
+      passed = logLikelihoodRatio < 0;
+    }
+  }
+
+  boolean passed() {
+    checkState(isDecided(), "Test not yet decided");
+    return passed;
+  }
+}
@@ -4,20 +4,25 @@ import static com.google.common.base.Preconditions.checkState;
 import static java.lang.Math.sqrt;
 import static org.alicep.benchmark.Bytes.bytes;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.function.LongUnaryOperator;
 import java.util.function.Supplier;
 
-import org.alicep.benchmark.BenchmarkRunner.MinBenchmarkTime;
-import org.alicep.benchmark.BenchmarkRunner.MinSampleTime;
-import org.alicep.benchmark.BenchmarkRunner.MinSamples;
-import org.alicep.benchmark.BenchmarkRunner.TargetError;
+import org.alicep.benchmark.BenchmarkRunner.DiscardDrift;
+import org.alicep.benchmark.BenchmarkRunner.HotLoop;
+import org.alicep.benchmark.BenchmarkRunner.JvmArgs;
+import org.alicep.benchmark.BenchmarkRunner.Mode;
+import org.alicep.benchmark.BenchmarkRunner.OperationsPerInvocation;
 import org.junit.AssumptionViolatedException;
 import org.junit.runner.Description;
 import org.junit.runner.Runner;
 import org.junit.runner.notification.Failure;
 import org.junit.runner.notification.RunNotifier;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Ordering;
 
 class SingleBenchmark extends Runner implements Comparable<SingleBenchmark> {
@@ -25,10 +30,23 @@ class SingleBenchmark extends Runner implements Comparable<SingleBenchmark> {
   private static final double OUTLIER_EWMAV_WEIGHT = 0.1;
   private static final int OUTLIER_WINDOW = 20;
   private static final double CONFIDENCE_INTERVAL_99_PERCENT = 2.58;
+  private static final boolean LIST_FORKED_CLASSES = Boolean.getBoolean("benchmark.listForkedClasses");
+  private static final boolean REPORT_INLINING = Boolean.getBoolean("benchmark.reportInlining");
+  private static final int MAX_SEGMENTS_PRINTED = 5;
+
+  /** Samples between checks for drift, which is too costly to check after every sample. */
+  private static final int DRIFT_CHECK_INTERVAL = 10;
 
   private final Description description;
   private final Supplier<LongUnaryOperator> hotLoopFactory;
   private final Object configuration;
+  private final Map<String, String> configurationOverrides;
+
+  // Results of the last run
+  private double meanNanos = Double.NaN;
+  private double errorNanos = Double.NaN;
+  private long allocatedBytes = -1;
+  private boolean stationary = true;
 
   SingleBenchmark(
       Description description,
@@ -36,15 +54,21 @@ class SingleBenchmark extends Runner implements Comparable<SingleBenchmark> {
     this.description = description;
     this.hotLoopFactory = hotLoopFactory;
     this.configuration = null;
+    this.configurationOverrides = ImmutableMap.of();
   }
 
+  /**
+   * @param configurationOverrides the overrides {@code configuration} was chosen from, for a child JVM to apply
+   */
   SingleBenchmark(
       Description description,
       Supplier<LongUnaryOperator> hotLoopFactory,
-      Object configuration) {
+      Object configuration,
+      Map<String, String> configurationOverrides) {
     this.description = description;
     this.hotLoopFactory = hotLoopFactory;
     this.configuration = configuration;
+    this.configurationOverrides = configurationOverrides;
   }
 
   @Override
@@ -70,25 +94,38 @@ class SingleBenchmark extends Runner implements Comparable<SingleBenchmark> {
   public void run(RunNotifier notifier) {
     notifier.fireTestStarted(description);
 
+    JvmArgs jvmArgs = description.getAnnotation(JvmArgs.class);
+    if (jvmArgs != null && !JvmArgsSweep.isForked()) {
+      runForked(notifier, jvmArgs);
+      return;
+    }
+
     ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
 
-    try (EdenMonitor allocationMonitor = EdenMonitor.isAvailable() ? EdenMonitor.create() : null) {
+    try (AllocationMonitor allocationMonitor =
+        AllocationMonitor.isAvailable() ? AllocationMonitor.forAllThreads() : null;
+        InliningReport inliningReport = REPORT_INLINING ? InliningReport.start() : null;
+        FlightRecording flightRecording = FlightRecording.forBenchmark(description)) {
       // The hot loop we are timing
       LongUnaryOperator hotLoop = hotLoopFactory.get();
       Thread.currentThread().setContextClassLoader(hotLoop.getClass().getClassLoader());
-
-      double targetError = description.getAnnotation(TargetError.class).value();
-      long minBenchmarkNanos = description.getAnnotation(MinBenchmarkTime.class).millis() * 1_000_000;
-      int minSamples = description.getAnnotation(MinSamples.class).value();
-      long minSampleNanos = description.getAnnotation(MinSampleTime.class).millis() * 1_000_000;
-
-      if (config() == null) {
-        System.out.print(description.getMethodName() + ": ");
-      } else {
-        System.out.print(config() + ": ");
-      }
-      if (System.getenv("CI") == null) {
-        System.out.flush();
+      printName();
+
+      MeasurementSettings settings = MeasurementSettings.instance();
+      double targetError = settings.targetError(description);
+      long minBenchmarkNanos = settings.minBenchmarkMillis(description) * 1_000_000;
+      int minSamples = settings.minSamples(description);
+      long minSampleNanos = settings.minSampleMillis(description) * 1_000_000;
+      DiscardDrift discardDrift = description.getAnnotation(DiscardDrift.class);
+
+      Mode.Kind mode = description.getAnnotation(Mode.class).value();
+      if (mode == Mode.Kind.SINGLE_SHOT) {
+        measureColdStarts(hotLoop, allocationMonitor, flightRecording, minSamples, minBenchmarkNanos);
+        if (LIST_FORKED_CLASSES) {
+          printForkedClasses(BenchmarkCompiler.generatedClassLoader(hotLoop));
+        }
+        notifier.fireTestFinished(description);
+        return;
       }
 
       // Number of times to run the hot loop for
@@ -97,6 +134,16 @@ class SingleBenchmark extends Runner implements Comparable<SingleBenchmark> {
       // Elapsed time (total time / iterations) for each timed iteration
       double[] timings = new double[50];
 
+      // Every timed iteration, including outliers, to check for phase changes
+      double[] unfilteredTimings = new double[50];
+      int unfilteredSamples = 0;
+
+      // Index into unfilteredTimings of each entry in timings, so outliers stay filtered when drift is discarded
+      int[] timingSources = new int[50];
+
+      // When to next check for drift, in unfiltered samples
+      int nextDriftCheck = 0;
+
       // Memory allocated per iteration
       long[] allocated = allocationMonitor == null ? null : new long[50];
 
@@ -116,8 +163,14 @@ class SingleBenchmark extends Runner implements Comparable<SingleBenchmark> {
       // How many memory samples we've taken
       int memorySamples = 0;
 
+      // How many timing samples we've discarded as drifting
+      int driftingSamples = 0;
+
       long startTimeNanos = System.nanoTime();
 
+      if (flightRecording != null) {
+        flightRecording.start();
+      }
       do {
         if (memorySamples == 0) {
           System.gc();
@@ -142,62 +195,124 @@ class SingleBenchmark extends Runner implements Comparable<SingleBenchmark> {
           hotLoopIterations = hotLoopIterations + (hotLoopIterations >> 1) + 1;
           timingSamples = -1;
           memorySamples = 0;
+          unfilteredSamples = 0;
+          nextDriftCheck = 0;
         } else {
           // Record elapsed time if we're in the timing loop
           if (timings.length == timingSamples) {
             timings = Arrays.copyOf(timings, timings.length * 2);
+            timingSources = Arrays.copyOf(timingSources, timings.length);
           }
           double iterationTime = (double) elapsed / hotLoopIterations;
+          if (unfilteredTimings.length == unfilteredSamples) {
+            unfilteredTimings = Arrays.copyOf(unfilteredTimings, unfilteredSamples * 2);
+          }
+          unfilteredTimings[unfilteredSamples++] = iterationTime;
 
-          if (timingSamples >= OUTLIER_WINDOW) {
-            if (isOutlier(iterationTime, ewma / id, ewmas / id, timingSamples)) {
-              continue;
+          boolean enoughTotalTime = (System.nanoTime() - startTimeNanos) >= minBenchmarkNanos;
+          boolean outlier = timingSamples >= OUTLIER_WINDOW
+              && isOutlier(iterationTime, ewma / id, ewmas / id, timingSamples);
+          boolean done = false;
+          if (!outlier) {
+            timings[timingSamples] = iterationTime;
+            timingSources[timingSamples] = unfilteredSamples - 1;
+            tS += iterationTime;
+            tSS += iterationTime * iterationTime;
+            id = updateEwmav(id, 1.0);
+            ewma = updateEwmav(ewma, iterationTime);
+            ewmas = updateEwmav(ewmas, iterationTime * iterationTime);
+
+            // Remove old outliers
+            // We do this as we run so that the sample error calculations do not include erroneous data
+            if (timingSamples >= OUTLIER_WINDOW) {
+              int firstIndex = timingSamples - OUTLIER_WINDOW;
+              for (int index = timingSamples - OUTLIER_WINDOW; index >= firstIndex; index--) {
+                if (isOutlier(timings, index, timingSamples - index)) {
+                  double value = timings[index];
+                  tS -= value;
+                  tSS -= value * value;
+                  for (int i = index + 1; i <= timingSamples; ++i) {
+                    timings[i - 1] = timings[i];
+                    timingSources[i - 1] = timingSources[i];
+                  }
+                  timings[timingSamples] = 0.0;
+                  firstIndex = Math.max(index - OUTLIER_WINDOW, 0);
+                  timingSamples--;
+                }
+              }
+              id = 0.0;
+              ewma = 0.0;
+              ewmas = 0.0;
+              for (int i = 0; i < timingSamples; ++i) {
+                id = updateEwmav(id, 1.0);
+                ewma = updateEwmav(ewma, timings[i]);
+                ewmas = updateEwmav(ewmas, timings[i] * timings[i]);
+              }
             }
+
+            // Calculate ongoing sample error
+            double sampleError = sqrt((tSS - tS*tS/(timingSamples + 1)) / ((timingSamples + 1) * timingSamples));
+            double confidenceInterval = sampleError * CONFIDENCE_INTERVAL_99_PERCENT;
+            boolean lowSampleError = confidenceInterval * timingSamples < tS * targetError;
+
+            // Stop if we're confident our error is low
+            boolean enoughSamples = timingSamples >= minSamples;
+
+            done = enoughSamples && enoughTotalTime && lowSampleError
+                && hasLowRobustError(timings, timingSamples + 1, targetError, allocationMonitor);
           }
 
-          timings[timingSamples] = iterationTime;
-          tS += iterationTime;
-          tSS += iterationTime * iterationTime;
-          id = updateEwmav(id, 1.0);
-          ewma = updateEwmav(ewma, iterationTime);
-          ewmas = updateEwmav(ewmas, iterationTime * iterationTime);
-
-          // Remove old outliers
-          // We do this as we run so that the sample error calculations do not include erroneous data
-          if (timingSamples >= OUTLIER_WINDOW) {
-            int firstIndex = timingSamples - OUTLIER_WINDOW;
-            for (int index = timingSamples - OUTLIER_WINDOW; index >= firstIndex; index--) {
-              if (isOutlier(timings, index, timingSamples - index)) {
-                double value = timings[index];
-                tS -= value;
-                tSS -= value * value;
-                for (int i = index + 1; i < timingSamples; ++i) {
-                  timings[i - 1] = timings[i];
+          // Discard samples from before the last shift in the mean, if asked to, and keep going. Check every few
+          // samples, and before stopping. Count outliers too: after a shift, the outlier filter rejects every sample
+          // until the samples from before it are discarded.
+          boolean discarding = discardDrift != null && unfilteredSamples >= minSamples && enoughTotalTime
+              && (System.nanoTime() - startTimeNanos) < discardDrift.maxTimeFactor() * minBenchmarkNanos;
+          if (discarding && (done || unfilteredSamples >= nextDriftCheck)) {
+            int[] changePoints = Statistics.changePoints(unfilteredTimings, unfilteredSamples, targetError);
+            if (allocationMonitor != null) {
+              // Keep the check's own allocations out of the next sample
+              allocationMonitor.sample();
+            }
+            if (changePoints.length > 0) {
+              int drifting = changePoints[changePoints.length - 1];
+              unfilteredSamples -= drifting;
+              driftingSamples += drifting;
+              System.arraycopy(unfilteredTimings, drifting, unfilteredTimings, 0, unfilteredSamples);
+              if (allocated != null) {
+                memorySamples -= drifting;
+                System.arraycopy(allocated, drifting, allocated, 0, memorySamples);
+              }
+              int kept = 0;
+              for (int i = 0; i < (outlier ? timingSamples : timingSamples + 1); ++i) {
+                if (timingSources[i] >= drifting) {
+                  timings[kept] = timings[i];
+                  timingSources[kept] = timingSources[i] - drifting;
+                  kept++;
                 }
-                timings[timingSamples] = 0.0;
-                firstIndex = Math.max(index - OUTLIER_WINDOW, 0);
-                timingSamples--;
               }
+              timingSamples = kept - 1;
+              tS = 0.0;
+              tSS = 0.0;
+              id = 0.0;
+              ewma = 0.0;
+              ewmas = 0.0;
+              for (int i = 0; i <= timingSamples; ++i) {
+                tS += timings[i];
+                tSS += timings[i] * timings[i];
+                id = updateEwmav(id, 1.0);
+                ewma = updateEwmav(ewma, timings[i]);
+                ewmas = updateEwmav(ewmas, timings[i] * timings[i]);
+              }
+              nextDriftCheck = unfilteredSamples + DRIFT_CHECK_INTERVAL;
+              timingSamples++;
+              continue;
             }
-            id = 0.0;
-            ewma = 0.0;
-            ewmas = 0.0;
-            for (int i = 0; i < timingSamples; ++i) {
-              id = updateEwmav(id, 1.0);
-              ewma = updateEwmav(ewma, timings[i]);
-              ewmas = updateEwmav(ewmas, timings[i] * timings[i]);
-            }
+            nextDriftCheck = unfilteredSamples + DRIFT_CHECK_INTERVAL;
           }
-
-          // Calculate ongoing sample error
-          double sampleError = sqrt((tSS - tS*tS/(timingSamples + 1)) / ((timingSamples + 1) * timingSamples));
-          double confidenceInterval = sampleError * CONFIDENCE_INTERVAL_99_PERCENT;
-          boolean lowSampleError = confidenceInterval * timingSamples < tS * targetError;
-
-          // Break out of the loop if we're confident our error is low
-          boolean enoughSamples = timingSamples >= minSamples;
-          boolean enoughTotalTime = (System.nanoTime() - startTimeNanos) >= minBenchmarkNanos;
-          if (enoughSamples && enoughTotalTime && lowSampleError) {
+          if (outlier) {
+            continue;
+          }
+          if (done) {
             monitor.stop();
             timingSamples++;
             break;
@@ -207,26 +322,94 @@ class SingleBenchmark extends Runner implements Comparable<SingleBenchmark> {
         timingSamples++;
       } while (true);
 
-      summarize(tS, tSS, timingSamples, allocated, memorySamples, monitor);
+      if (flightRecording != null) {
+        flightRecording.stop();
+      }
+      if (inliningReport != null) {
+        inliningReport.stop();
+      }
+      Statistics.Interval measured =
+          Statistics.bootstrapMedianOfMeans(timings, timingSamples, Statistics.CONFIDENCE_99_PERCENT);
+      Calibration calibration = calibration();
+      Statistics.Interval time = calibration.correct(measured);
+      summarize(time, allocated, memorySamples, operationsPerInvocation(), mode, monitor);
+      if (calibration.isAtFloor(measured.estimate)) {
+        System.out.println("  * No slower than an empty hot loop (" + Nanos.formatNanos(calibration.floorNanos())
+            + " per call); the JIT may have optimized the benchmark away");
+      }
+      printModes(unfilteredTimings, unfilteredSamples, operationsPerInvocation());
+      stationary = printDrift(
+          unfilteredTimings, unfilteredSamples, targetError, driftingSamples, operationsPerInvocation());
+      meanNanos = time.estimate;
+      errorNanos = time.halfWidth();
+      allocatedBytes = (allocated == null) ? -1 : median(Arrays.copyOf(allocated, memorySamples));
+      if (LIST_FORKED_CLASSES) {
+        printForkedClasses(BenchmarkCompiler.generatedClassLoader(hotLoop));
+      }
+      if (inliningReport != null) {
+        inliningReport.print(BenchmarkCompiler.generatedClassLoader(hotLoop), System.out);
+      }
+      if (flightRecording != null) {
+        flightRecording.save(BenchmarkCompiler.generatedClassLoader(hotLoop), System.out);
+      }
+      StackSampler stackSampler = StackSampler.forBenchmark(description);
+      if (stackSampler != null) {
+        stackSampler.profile(hotLoop, hotLoopIterations, timingSamples, tS / timingSamples, System.out);
+      }
       notifier.fireTestFinished(description);
     } catch (Throwable t) {
-      if (t.getClass().getName().equals(AssumptionViolatedException.class.getName())) {
-        // Janky class name check because this might be thrown from a forked ClassLoader
-        notifier.fireTestAssumptionFailed(new Failure(description, t));
-      } else {
-        System.out.print(t.getClass().getSimpleName());
-        if (t.getMessage() != null) {
-          System.out.print(": ");
-          System.out.print(t.getMessage());
-        }
-        System.out.println();
-        notifier.fireTestFailure(new Failure(description, t));
-      }
+      reportFailure(notifier, t);
     } finally {
       Thread.currentThread().setContextClassLoader(originalClassLoader);
     }
   }
 
+  /**
+   * Runs the benchmark in a child JVM per {@link JvmArgs} flag set, keeping the first flag set's results as this
+   * benchmark's.
+   */
+  private void runForked(RunNotifier notifier, JvmArgs jvmArgs) {
+    try {
+      printName();
+      List<JvmArgsSweep.Result> results = JvmArgsSweep.run(description, jvmArgs, configurationOverrides, System.out);
+      meanNanos = results.get(0).meanNanos;
+      errorNanos = results.get(0).errorNanos;
+      allocatedBytes = results.get(0).allocatedBytes;
+      stationary = results.get(0).stationary;
+      notifier.fireTestFinished(description);
+    } catch (Throwable t) {
+      reportFailure(notifier, t);
+    }
+  }
+
+  private void printName() {
+    if (config() == null) {
+      System.out.print(description.getMethodName() + ": ");
+    } else if (config() instanceof ConfigurationGrid.Point) {
+      System.out.print(((ConfigurationGrid.Point) config()).row() + ": ");
+    } else {
+      System.out.print(config() + ": ");
+    }
+    if (System.getenv("CI") == null) {
+      System.out.flush();
+    }
+  }
+
+  private void reportFailure(RunNotifier notifier, Throwable t) {
+    if (t.getClass().getName().equals(AssumptionViolatedException.class.getName())) {
+      // Janky class name check because this might be thrown from a forked ClassLoader
+      notifier.fireTestAssumptionFailed(new Failure(description, t));
+    } else {
+      System.out.print(t.getClass().getSimpleName());
+      if (t.getMessage() != null) {
+        System.out.print(": ");
+        System.out.print(t.getMessage());
+      }
+      System.out.println();
+      notifier.fireTestFailure(new Failure(description, t));
+    }
+  }
+
   private static boolean isOutlier(double[] timings, int index, int samples) {
     double id = 0.0;
     double ewma = 0.0;
@@ -256,42 +439,277 @@ class SingleBenchmark extends Runner implements Comparable<SingleBenchmark> {
     return OUTLIER_EWMAV_WEIGHT * value + (1 - OUTLIER_EWMAV_WEIGHT) * mav;
   }
 
+  /**
+   * Times single calls to the benchmark, each through a freshly-loaded hot loop so no class is initialized or
+   * compiled beforehand, and prints the distribution.
+   */
+  private void measureColdStarts(
+      LongUnaryOperator firstHotLoop,
+      AllocationMonitor allocationMonitor,
+      FlightRecording flightRecording,
+      int minSamples,
+      long minBenchmarkNanos) throws InterruptedException {
+    long operations = operationsPerInvocation();
+    double timerLatencyNanos = calibration().timerLatencyNanos();
+    double[] timings = new double[Math.max(minSamples, 1)];
+    long[] allocated = (allocationMonitor == null) ? null : new long[timings.length];
+    int trials = 0;
+    long startTimeNanos = System.nanoTime();
+    LongUnaryOperator hotLoop = firstHotLoop;
+    if (flightRecording != null) {
+      flightRecording.start();
+    }
+    do {
+      if (trials > 0) {
+        hotLoop = hotLoopFactory.get();
+        Thread.currentThread().setContextClassLoader(hotLoop.getClass().getClassLoader());
+      }
+      if (timings.length == trials) {
+        timings = Arrays.copyOf(timings, trials * 2);
+        allocated = (allocated == null) ? null : Arrays.copyOf(allocated, trials * 2);
+      }
+      if (allocationMonitor != null) {
+        allocationMonitor.sample();
+      }
+      // Each trial is timed between two calls to System.nanoTime(), roughly one call's latency
+      timings[trials] = Math.max(hotLoop.applyAsLong(1) - timerLatencyNanos, 0) / operations;
+      if (allocationMonitor != null) {
+        allocated[trials] = allocationMonitor.sample();
+      }
+      trials++;
+    } while (trials < minSamples || System.nanoTime() - startTimeNanos < minBenchmarkNanos);
+    if (flightRecording != null) {
+      flightRecording.stop();
+    }
+
+    double[] sorted = Arrays.copyOf(timings, trials);
+    Arrays.sort(sorted);
+    Statistics.Interval median =
+        Statistics.bootstrap(timings, trials, Statistics::median, Statistics.CONFIDENCE_99_PERCENT);
+    meanNanos = median.estimate * operations;
+    errorNanos = median.halfWidth() * operations;
+    allocatedBytes = (allocated == null) ? -1 : median(Arrays.copyOf(allocated, trials));
+    String unit = (operations == 1) ? "" : "/op";
+    System.out.print(Nanos.formatNanos(percentile(sorted, 0.5)) + unit
+        + " (min " + Nanos.formatNanos(sorted[0])
+        + ", p90 " + Nanos.formatNanos(percentile(sorted, 0.9))
+        + ", max " + Nanos.formatNanos(sorted[trials - 1])
+        + ") over " + trials + " cold starts");
+    if (allocated != null) {
+      System.out.print(", " + summarizeMemory(Arrays.copyOf(allocated, trials), operations, unit));
+    }
+    System.out.println();
+    printModes(timings, trials, 1);
+    if (flightRecording != null) {
+      flightRecording.save(BenchmarkCompiler.generatedClassLoader(hotLoop), System.out);
+    }
+  }
+
+  private static long median(long[] values) {
+    Arrays.sort(values);
+    return values[values.length / 2];
+  }
+
+  private static double percentile(double[] sorted, double fraction) {
+    return sorted[Math.max((int) Math.ceil(fraction * sorted.length) - 1, 0)];
+  }
+
+  private Calibration calibration() {
+    return Calibration.forHotLoop(BenchmarkCompiler.HotLoopOptions.of(description.getAnnotation(HotLoop.class)));
+  }
+
+  long operationsPerInvocation() {
+    OperationsPerInvocation operations = description.getAnnotation(OperationsPerInvocation.class);
+    if (operations == null) {
+      return 1;
+    } else if (operations.fromConfiguration()) {
+      checkState(config() instanceof Number,
+          "@OperationsPerInvocation(fromConfiguration = true) requires a numeric configuration, not %s", config());
+      long value = ((Number) config()).longValue();
+      checkState(value > 0, "Operations per invocation must be positive, not %s", value);
+      return value;
+    } else {
+      checkState(operations.value() > 0, "Operations per invocation must be positive, not %s", operations.value());
+      return operations.value();
+    }
+  }
+
+  /**
+   * Returns whether the sample error, already below target assuming normally-distributed timings, is still below
+   * target without that assumption, bootstrapping an interval if the timings do not look normal.
+   *
+   * <p>Discards the resampling's own allocations from the next memory sample.
+   */
+  private static boolean hasLowRobustError(
+      double[] timings,
+      int samples,
+      double targetError,
+      AllocationMonitor allocationMonitor) throws InterruptedException {
+    if (Statistics.isApproximatelyNormal(timings, samples)) {
+      return true;
+    }
+    Statistics.Interval time =
+        Statistics.bootstrap(timings, samples, Statistics::mean, Statistics.CONFIDENCE_99_PERCENT);
+    if (allocationMonitor != null) {
+      allocationMonitor.sample();
+    }
+    return time.halfWidth() < time.estimate * targetError;
+  }
+
   private static void summarize(
-      double tS,
-      double tSS,
-      int iterations,
+      Statistics.Interval time,
       long[] allocated,
       int memorySamples,
+      long operations,
+      Mode.Kind mode,
       ManagementMonitor monitor) {
-    System.out.print(summarizeTime(tS, tSS, iterations));
-    if (allocated != null) {
-      System.out.print(summarizeMemory(Arrays.copyOf(allocated, memorySamples)));
+    if (mode == Mode.Kind.THROUGHPUT) {
+      Statistics.Interval perOperation = time.scaledBy(1.0 / operations);
+      String unit = (operations == 1) ? "" : "/op";
+      System.out.print(summarizeRate(perOperation) + ", " + Nanos.formatNanos(perOperation.estimate) + unit);
+      if (allocated != null) {
+        System.out.print(", " + summarizeMemory(Arrays.copyOf(allocated, memorySamples), operations, unit));
+      }
+    } else if (operations == 1) {
+      System.out.print(summarizeTime(time, ""));
+      if (allocated != null) {
+        System.out.print(", " + summarizeMemory(Arrays.copyOf(allocated, memorySamples), 1, ""));
+      }
+    } else {
+      Statistics.Interval perOperation = time.scaledBy(1.0 / operations);
+      System.out.print(summarizeTime(perOperation, "/op"));
+      if (perOperation.estimate > 0) {
+        System.out.print(", " + Nanos.formatThroughput(perOperation.estimate));
+      }
+      if (allocated != null) {
+        System.out.print(", " + summarizeMemory(Arrays.copyOf(allocated, memorySamples), operations, "/op"));
+      }
     }
     System.out.println();
     monitor.printIfChanged(System.out);
   }
 
-  private static String summarizeTime(double tS, double tSS, int iterations) {
-    double total = tS;
-    double mean = total / iterations;
-    double sd = sqrt((tSS - tS*tS/iterations) / (iterations - 1));
-    String timeSummary = Nanos.formatNanos(mean) + " (±" + Nanos.formatNanos(sd * CONFIDENCE_INTERVAL_99_PERCENT) + ")";
-    return timeSummary;
+  /**
+   * Formats the rate of an operation taking {@code perOperation}, with its error.
+   *
+   * <p>Calibration clamps corrected times at zero, which has no finite rate, so a time or lower bound of zero is
+   * reported as at the timer's resolution instead.
+   */
+  private static String summarizeRate(Statistics.Interval perOperation) {
+    if (!(perOperation.estimate > 0)) {
+      return "rate at timer resolution";
+    }
+    double rate = 1e9 / perOperation.estimate;
+    if (!(perOperation.lower > 0)) {
+      return Nanos.formatRate(rate) + " (upper bound at timer resolution)";
+    }
+    double rateError = Math.max(1e9 / perOperation.lower - rate, rate - 1e9 / perOperation.upper);
+    return Nanos.formatRate(rate) + " (±" + Nanos.formatRate(rateError) + ")";
   }
 
-  private static String summarizeMemory(long[] allocated) {
+  private static String summarizeTime(Statistics.Interval time, String unit) {
+    return Nanos.formatNanos(time.estimate) + unit + " (±" + Nanos.formatNanos(time.halfWidth()) + ")";
+  }
+
+  /**
+   * Reports any samples discarded as drifting, and the segments of {@code timings} with different means if they are
+   * not stationary, returning whether they are.
+   */
+  private static boolean printDrift(
+      double[] timings,
+      int samples,
+      double targetError,
+      int driftingSamples,
+      long operations) {
+    if (driftingSamples > 0) {
+      System.out.println("  * Discarded the first " + driftingSamples + " samples, until timings stopped drifting");
+    }
+    int[] changePoints = Statistics.changePoints(timings, samples, targetError);
+    if (changePoints.length == 0) {
+      return true;
+    }
+    List<String> segments = new ArrayList<>();
+    int start = 0;
+    for (int i = 0; i <= changePoints.length && segments.size() < MAX_SEGMENTS_PRINTED; i++) {
+      int end = (i < changePoints.length) ? changePoints[i] : samples;
+      double mean = Statistics.mean(Arrays.copyOfRange(timings, start, end), end - start);
+      segments.add(Nanos.formatNanos(mean / operations) + " (samples " + (start + 1) + "-" + end + ")");
+      start = end;
+    }
+    int more = changePoints.length + 1 - segments.size();
+    System.out.println("  * Timings drifted: " + String.join(" → ", segments)
+        + ((more > 0) ? " and " + more + " more" : ""));
+    return false;
+  }
+
+  /**
+   * Flags timings with two distinct modes, which usually means the JIT or GC changed behaviour part-way through.
+   */
+  private static void printModes(double[] timings, int samples, long operations) {
+    Statistics.Modes modes = Statistics.modes(timings, samples);
+    if (modes != null) {
+      System.out.println(String.format("  * Bimodal timings: %.0f%% near %s, %.0f%% near %s; "
+          + "the JIT or GC may have changed behaviour mid-run",
+          100 * modes.lowerFraction, Nanos.formatNanos(modes.lowerMean / operations),
+          100 * modes.upperFraction, Nanos.formatNanos(modes.upperMean / operations)));
+    }
+  }
+
+  private static String summarizeMemory(long[] allocated, long operations, String unit) {
     Arrays.sort(allocated);
-    long median = allocated[allocated.length / 2];
-    long q1 = allocated[allocated.length / 4];
-    long q3 = allocated[allocated.length - allocated.length / 4];
+    long median = Math.round((double) allocated[allocated.length / 2] / operations);
+    long q1 = Math.round((double) allocated[allocated.length / 4] / operations);
+    long q3 = Math.round((double) allocated[allocated.length - allocated.length / 4] / operations);
     long errorMargin = Math.max(q1 - median, q3 - median);
     if (errorMargin == 0) {
-      return bytes(median).toString();
+      return bytes(median) + unit;
+    } else {
+      return bytes(median) + unit + " (±" + bytes(errorMargin) + ")";
+    }
+  }
+
+  private static void printForkedClasses(ClassLoader classLoader) {
+    if (!(classLoader instanceof ForkingClassLoader)) {
+      System.out.println("  * No core classes forked (forking class-loader disabled)");
+      return;
+    }
+    List<String> forked = ((ForkingClassLoader) classLoader).forkedCoreClasses();
+    if (forked.isEmpty()) {
+      System.out.println("  * No core classes forked");
     } else {
-      return bytes(median) + " (±" + bytes(errorMargin) + ")";
+      System.out.println("  * Forked " + forked.size() + " core classes:");
+      forked.stream().sorted().forEach(cls -> System.out.println("      " + cls));
     }
   }
 
+  /**
+   * Returns the mean time per invocation measured by the last run, or NaN if it has not completed.
+   */
+  double meanNanos() {
+    return meanNanos;
+  }
+
+  /**
+   * Returns the 99% confidence interval of {@link #meanNanos()}.
+   */
+  double errorNanos() {
+    return errorNanos;
+  }
+
+  /**
+   * Returns the median bytes allocated per invocation in the last run, or -1 if unknown.
+   */
+  long allocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * Returns whether the last run's timings had a steady mean throughout; always true for single-shot benchmarks.
+   */
+  boolean isStationary() {
+    return stationary;
+  }
+
   public Object config() {
     return configuration;
   }
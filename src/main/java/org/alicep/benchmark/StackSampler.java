@@ -0,0 +1,140 @@
+package org.alicep.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongUnaryOperator;
+
+import org.junit.runner.Description;
+
+/**
+ * A lightweight sampling profiler, writing the benchmark thread's stacks as collapsed-stack files for flame graph
+ * tools.
+ *
+ * <p>Enabled by setting the {@value #PROPERTY} system property to {@code true} (saving under
+ * {@value #DEFAULT_DIRECTORY}) or to a directory. Sampling runs as an extra phase after the measured samples, so the
+ * reported figures are never perturbed; comparing the time per iteration in each phase gives the profiler's overhead.
+ */
+class StackSampler {
+
+  static final String PROPERTY = "benchmark.sampleStacks";
+  static final String DEFAULT_DIRECTORY = "build/benchmark-stacks";
+
+  private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /**
+   * Returns a sampler for the benchmark, or null if stack sampling is disabled.
+   */
+  static StackSampler forBenchmark(Description description) {
+    String property = System.getProperty(PROPERTY, "");
+    if (property.isEmpty() || property.equalsIgnoreCase("false")) {
+      return null;
+    }
+    Path directory = property.equalsIgnoreCase("true") ? Paths.get(DEFAULT_DIRECTORY) : Paths.get(property);
+    return new StackSampler(directory.resolve(FlightRecording.fileName(description, ".collapsed")));
+  }
+
+  private final Path file;
+  private final Map<String, Long> stacks = new TreeMap<>();
+  private long samples;
+  private long missed;
+
+  private StackSampler(Path file) {
+    this.file = file;
+  }
+
+  /**
+   * Samples stacks while running {@code hotLoop} the given number of times, saves them, and prints a summary
+   * including the overhead relative to {@code measuredNanos} per iteration.
+   */
+  void profile(LongUnaryOperator hotLoop, long iterations, int runs, double measuredNanos, PrintStream ps) {
+    Thread benchmarkThread = Thread.currentThread();
+    String rootClass = BenchmarkCompiler.generatedClass(hotLoop).getName();
+    Thread sampler = new Thread(() -> {
+      while (!Thread.interrupted()) {
+        LockSupport.parkNanos(INTERVAL_NANOS);
+        record(benchmarkThread.getStackTrace(), rootClass);
+      }
+    }, "Benchmark stack sampler");
+    sampler.setDaemon(true);
+
+    long elapsed = 0;
+    sampler.start();
+    try {
+      for (int i = 0; i < runs; i++) {
+        elapsed += hotLoop.applyAsLong(iterations);
+      }
+    } finally {
+      sampler.interrupt();
+      try {
+        sampler.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    double profiledNanos = (double) elapsed / iterations / runs;
+
+    try {
+      Files.createDirectories(file.getParent());
+      try (Writer writer = Files.newBufferedWriter(file, UTF_8)) {
+        for (Map.Entry<String, Long> stack : stacks.entrySet()) {
+          writer.write(stack.getKey() + " " + stack.getValue() + "\n");
+        }
+      }
+    } catch (IOException e) {
+      ps.println("[WARN] Stack samples not saved: " + e);
+      return;
+    }
+    ps.println(String.format("  * %d stack samples saved to %s (profiled at %s, %+.1f%% overhead)",
+        samples, file, Nanos.formatNanos(profiledNanos), 100.0 * (profiledNanos / measuredNanos - 1)));
+    if (missed > 0) {
+      ps.println("      " + missed + " samples were outside the hot loop");
+    }
+  }
+
+  /**
+   * Returns the number of samples of each collapsed stack recorded so far.
+   */
+  Map<String, Long> stacks() {
+    return stacks;
+  }
+
+  /**
+   * Returns the number of samples taken outside the hot loop so far.
+   */
+  long missed() {
+    return missed;
+  }
+
+  /**
+   * Adds a stack to the collapsed-stack counts, root first, omitting the runner frames below the hot loop.
+   */
+  void record(StackTraceElement[] stackTrace, String rootClass) {
+    int root = stackTrace.length - 1;
+    while (root >= 0 && !stackTrace[root].getClassName().equals(rootClass)) {
+      root--;
+    }
+    if (root < 0) {
+      missed++;
+      return;
+    }
+    StringBuilder stack = new StringBuilder();
+    for (int i = root; i >= 0; i--) {
+      if (i < root) {
+        stack.append(';');
+      }
+      stack.append(stackTrace[i].getClassName()).append('.').append(stackTrace[i].getMethodName());
+    }
+    stacks.merge(stack.toString(), 1L, Long::sum);
+    samples++;
+  }
+}
@@ -0,0 +1,364 @@
+package org.alicep.benchmark;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Statistics for benchmark timings that do not assume they are normally distributed, which they rarely are: JIT
+ * recompilations, GC and other machine load skew them, and can leave them with more than one mode.
+ */
+class Statistics {
+
+  static final double CONFIDENCE_99_PERCENT = 0.99;
+
+  private static final int RESAMPLES = 1000;
+  private static final long SEED = 0x5EED;
+  private static final int MEDIAN_OF_MEANS_GROUPS = 5;
+
+  /** Jarque-Bera statistic above which to reject normality with 99% confidence (chi-squared, 2 degrees of freedom). */
+  private static final double JARQUE_BERA_99_PERCENT = 9.21;
+
+  /** Bimodality coefficient of a uniform distribution; higher values suggest more than one mode. */
+  private static final double BIMODALITY_THRESHOLD = 5.0 / 9;
+
+  /** Ashman's D above which two modes are cleanly separated. */
+  private static final double MIN_MODE_SEPARATION = 2;
+
+  /** Density between two modes, relative to the sparser mode, below which they are distinct. */
+  private static final double MAX_DIP_DENSITY = 0.5;
+
+  /** Fraction of a cluster's values that must lie near its mean for it to count as a mode, not scattered outliers. */
+  private static final double MIN_MODE_CONCENTRATION = 0.4;
+
+  private static final int MIN_SAMPLES_FOR_MODES = 20;
+  private static final double MIN_MODE_FRACTION = 0.1;
+
+  /** Multiple of the noise variance and log sample count a split must explain to count as a change point. */
+  private static final double CHANGE_POINT_PENALTY = 6;
+  private static final int MIN_SEGMENT = 5;
+
+  /**
+   * A statistic of a sample, as a function of the first {@code n} values of an array.
+   */
+  @FunctionalInterface
+  interface Estimator {
+    double estimate(double[] values, int n);
+  }
+
+  /**
+   * An estimate, with a confidence interval that need not be symmetric.
+   */
+  static class Interval {
+    final double estimate;
+    final double lower;
+    final double upper;
+
+    Interval(double estimate, double lower, double upper) {
+      this.estimate = estimate;
+      this.lower = lower;
+      this.upper = upper;
+    }
+
+    /**
+     * Returns the larger distance from the estimate to either end of the interval.
+     */
+    double halfWidth() {
+      return Math.max(estimate - lower, upper - estimate);
+    }
+
+    Interval scaledBy(double factor) {
+      return new Interval(estimate * factor, lower * factor, upper * factor);
+    }
+  }
+
+  /**
+   * Two modes found in a sample, each summarized by its mean and the fraction of values nearest it.
+   */
+  static class Modes {
+    final double lowerMean;
+    final double lowerFraction;
+    final double upperMean;
+    final double upperFraction;
+
+    Modes(double lowerMean, double lowerFraction, double upperMean, double upperFraction) {
+      this.lowerMean = lowerMean;
+      this.lowerFraction = lowerFraction;
+      this.upperMean = upperMean;
+      this.upperFraction = upperFraction;
+    }
+  }
+
+  static double mean(double[] values, int n) {
+    checkArgument(n > 0);
+    double sum = 0;
+    for (int i = 0; i < n; i++) {
+      sum += values[i];
+    }
+    return sum / n;
+  }
+
+  static double median(double[] values, int n) {
+    checkArgument(n > 0);
+    double[] sorted = Arrays.copyOf(values, n);
+    Arrays.sort(sorted);
+    return (n % 2 == 1) ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2;
+  }
+
+  /**
+   * Returns the median of the means of consecutive groups of values, an estimate of the mean that one disrupted
+   * stretch of samples, such as a recompilation or a burst of machine load, cannot drag far.
+   *
+   * <p>Falls back to the plain mean when there are too few values to form groups of at least two.
+   */
+  static double medianOfMeans(double[] values, int n) {
+    checkArgument(n > 0);
+    if (n < 2 * MEDIAN_OF_MEANS_GROUPS) {
+      return mean(values, n);
+    }
+    double[] means = new double[MEDIAN_OF_MEANS_GROUPS];
+    for (int group = 0; group < MEDIAN_OF_MEANS_GROUPS; group++) {
+      int start = group * n / MEDIAN_OF_MEANS_GROUPS;
+      int end = (group + 1) * n / MEDIAN_OF_MEANS_GROUPS;
+      double sum = 0;
+      for (int i = start; i < end; i++) {
+        sum += values[i];
+      }
+      means[group] = sum / (end - start);
+    }
+    return median(means, MEDIAN_OF_MEANS_GROUPS);
+  }
+
+  /**
+   * Returns {@code estimator} applied to the first {@code n} values, with a percentile bootstrap confidence interval.
+   *
+   * <p>Resampling is seeded, so the same values always give the same interval.
+   */
+  static Interval bootstrap(double[] values, int n, Estimator estimator, double confidence) {
+    return bootstrap(values, n, 1, estimator, confidence);
+  }
+
+  /**
+   * Returns {@link #medianOfMeans} of the first {@code n} values, with a percentile bootstrap confidence interval.
+   *
+   * <p>Each value is resampled from within its own group, so every resample keeps the consecutive groups the estimate
+   * is built from; resampling across groups would scatter one disrupted stretch among them all, and bootstrap a
+   * different statistic, whose interval can exclude the estimate.
+   */
+  static Interval bootstrapMedianOfMeans(double[] values, int n, double confidence) {
+    int groups = (n < 2 * MEDIAN_OF_MEANS_GROUPS) ? 1 : MEDIAN_OF_MEANS_GROUPS;
+    return bootstrap(values, n, groups, Statistics::medianOfMeans, confidence);
+  }
+
+  private static Interval bootstrap(double[] values, int n, int groups, Estimator estimator, double confidence) {
+    checkArgument(n > 0);
+    checkArgument(confidence > 0 && confidence < 1);
+    SplittableRandom random = new SplittableRandom(SEED);
+    double[] resample = new double[n];
+    double[] estimates = new double[RESAMPLES];
+    for (int r = 0; r < RESAMPLES; r++) {
+      for (int group = 0; group < groups; group++) {
+        int start = group * n / groups;
+        int end = (group + 1) * n / groups;
+        for (int i = start; i < end; i++) {
+          resample[i] = values[start + random.nextInt(end - start)];
+        }
+      }
+      estimates[r] = estimator.estimate(resample, n);
+    }
+    Arrays.sort(estimates);
+    double tail = (1 - confidence) / 2;
+    int lower = (int) Math.floor(tail * RESAMPLES);
+    int upper = Math.min((int) Math.ceil((1 - tail) * RESAMPLES), RESAMPLES) - 1;
+    return new Interval(estimator.estimate(values, n), estimates[lower], estimates[upper]);
+  }
+
+  /**
+   * Returns whether a Jarque-Bera test, based on skewness and kurtosis, fails to reject normality with 99% confidence.
+   */
+  static boolean isApproximatelyNormal(double[] values, int n) {
+    if (n < 4) {
+      return true;
+    }
+    double[] moments = centralMoments(values, n);
+    if (moments[2] == 0) {
+      return true;
+    }
+    double skewness = moments[3] / Math.pow(moments[2], 1.5);
+    double excessKurtosis = moments[4] / (moments[2] * moments[2]) - 3;
+    double jarqueBera = n / 6.0 * (skewness * skewness + excessKurtosis * excessKurtosis / 4);
+    return jarqueBera < JARQUE_BERA_99_PERCENT;
+  }
+
+  /**
+   * Returns the two modes of the first {@code n} values, or null if they do not look bimodal.
+   *
+   * <p>Values are bimodal if their bimodality coefficient exceeds that of a uniform distribution, the best split into
+   * two clusters, each holding at least a tenth of the values, leaves them cleanly separated (Ashman's D > 2), each
+   * cluster is concentrated around its mean, and values are sparser midway between the clusters than around either.
+   */
+  static Modes modes(double[] values, int n) {
+    if (n < MIN_SAMPLES_FOR_MODES) {
+      return null;
+    }
+    double[] moments = centralMoments(values, n);
+    if (moments[2] == 0) {
+      return null;
+    }
+    double skewness = moments[3] / Math.pow(moments[2], 1.5);
+    double excessKurtosis = moments[4] / (moments[2] * moments[2]) - 3;
+    double coefficient = (skewness * skewness + 1)
+        / (excessKurtosis + 3.0 * (n - 1) * (n - 1) / ((n - 2.0) * (n - 3)));
+    if (coefficient <= BIMODALITY_THRESHOLD) {
+      return null;
+    }
+
+    // Find the split of the sorted values minimizing the total within-cluster sum of squares
+    double[] sorted = Arrays.copyOf(values, n);
+    Arrays.sort(sorted);
+    double[] sums = new double[n + 1];
+    double[] squares = new double[n + 1];
+    for (int i = 0; i < n; i++) {
+      sums[i + 1] = sums[i] + sorted[i];
+      squares[i + 1] = squares[i] + sorted[i] * sorted[i];
+    }
+    int minCluster = Math.max(2, (int) Math.ceil(n * MIN_MODE_FRACTION));
+    int bestSplit = -1;
+    double bestWithin = Double.POSITIVE_INFINITY;
+    for (int split = minCluster; split <= n - minCluster; split++) {
+      double within = sumOfSquares(sums, squares, 0, split) + sumOfSquares(sums, squares, split, n);
+      if (within < bestWithin) {
+        bestWithin = within;
+        bestSplit = split;
+      }
+    }
+    if (bestSplit < 0) {
+      return null;
+    }
+    int upperCount = n - bestSplit;
+    double lowerMean = sums[bestSplit] / bestSplit;
+    double upperMean = (sums[n] - sums[bestSplit]) / upperCount;
+    double lowerVariance = sumOfSquares(sums, squares, 0, bestSplit) / bestSplit;
+    double upperVariance = sumOfSquares(sums, squares, bestSplit, n) / upperCount;
+    double separation = Math.sqrt(2) * (upperMean - lowerMean) / Math.sqrt(lowerVariance + upperVariance);
+    if (!(separation > MIN_MODE_SEPARATION)) {
+      return null;
+    }
+
+    // Skewed timings, or scattered outliers, also split cleanly; require two peaks with a dip in density between them
+    double width = (upperMean - lowerMean) / 3;
+    int nearLower = count(sorted, lowerMean - width / 2, lowerMean + width / 2);
+    int nearUpper = count(sorted, upperMean - width / 2, upperMean + width / 2);
+    double middle = (lowerMean + upperMean) / 2;
+    int between = count(sorted, middle - width / 2, middle + width / 2);
+    if (between >= MAX_DIP_DENSITY * Math.min(nearLower, nearUpper)
+        || nearLower < MIN_MODE_CONCENTRATION * bestSplit
+        || nearUpper < MIN_MODE_CONCENTRATION * upperCount) {
+      return null;
+    }
+    return new Modes(lowerMean, (double) bestSplit / n, upperMean, (double) upperCount / n);
+  }
+
+  /**
+   * Returns the indices, in order, at which the mean of the first {@code n} values shifts by more than
+   * {@code minRelativeShift}, say from thermal throttling, heap growth or a gradual deoptimization; an empty array if
+   * the values look stationary.
+   *
+   * <p>Uses binary segmentation: the split of a segment that most reduces its sum of squared deviations from the mean
+   * (the CUSUM statistic) is accepted if the reduction exceeds a BIC-style penalty, scaled by a noise variance
+   * estimated from successive differences so the shifts themselves do not inflate it, then each half is searched in
+   * turn.
+   */
+  static int[] changePoints(double[] values, int n, double minRelativeShift) {
+    if (n < 2 * MIN_SEGMENT) {
+      return new int[0];
+    }
+    // Estimate the long-run noise variance from the median difference between the means of successive blocks, which
+    // tolerates autocorrelated timings, and is barely moved by the shifts themselves
+    int block = Math.max((int) Math.cbrt(n), 2);
+    int blocks = n / block;
+    double[] sums = new double[n + 1];
+    for (int i = 0; i < n; i++) {
+      sums[i + 1] = sums[i] + values[i];
+    }
+    double[] differences = new double[blocks - 1];
+    for (int i = 0; i + 1 < blocks; i++) {
+      differences[i] = Math.abs(sums[(i + 2) * block] - 2 * sums[(i + 1) * block] + sums[i * block]) / block;
+    }
+    // Median absolute value of normal noise is 0.674 sd; fall back to the mean square for coarsely-quantized timings
+    double typical = median(differences, blocks - 1) / 0.674;
+    double noise = block * ((typical > 0) ? typical * typical : mean(squares(differences), blocks - 1)) / 2;
+    double penalty = CHANGE_POINT_PENALTY * noise * Math.log(n);
+    List<Integer> changes = new ArrayList<>();
+    addChangePoints(sums, 0, n, penalty, minRelativeShift, changes);
+    return changes.stream().mapToInt(i -> i).sorted().toArray();
+  }
+
+  private static void addChangePoints(
+      double[] sums,
+      int from,
+      int to,
+      double penalty,
+      double minRelativeShift,
+      List<Integer> changes) {
+    int bestSplit = -1;
+    double bestGain = penalty;
+    for (int split = from + MIN_SEGMENT; split <= to - MIN_SEGMENT; split++) {
+      double before = (sums[split] - sums[from]) / (split - from);
+      double after = (sums[to] - sums[split]) / (to - split);
+      double gain = (double) (split - from) * (to - split) / (to - from) * (after - before) * (after - before);
+      if (gain > bestGain && Math.abs(after - before) > minRelativeShift * Math.min(before, after)) {
+        bestGain = gain;
+        bestSplit = split;
+      }
+    }
+    if (bestSplit >= 0) {
+      changes.add(bestSplit);
+      addChangePoints(sums, from, bestSplit, penalty, minRelativeShift, changes);
+      addChangePoints(sums, bestSplit, to, penalty, minRelativeShift, changes);
+    }
+  }
+
+  private static double[] squares(double[] values) {
+    return Arrays.stream(values).map(value -> value * value).toArray();
+  }
+
+  private static int count(double[] sorted, double from, double to) {
+    int count = 0;
+    for (double value : sorted) {
+      if (value >= from && value < to) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static double sumOfSquares(double[] sums, double[] squares, int from, int to) {
+    double sum = sums[to] - sums[from];
+    return Math.max(squares[to] - squares[from] - sum * sum / (to - from), 0);
+  }
+
+  /**
+   * Returns the first {@code n} values' central moments, indexed by order, up to the fourth.
+   */
+  private static double[] centralMoments(double[] values, int n) {
+    double mean = mean(values, n);
+    double[] moments = new double[5];
+    for (int i = 0; i < n; i++) {
+      double deviation = values[i] - mean;
+      double power = deviation * deviation;
+      moments[2] += power;
+      power *= deviation;
+      moments[3] += power;
+      power *= deviation;
+      moments[4] += power;
+    }
+    for (int order = 2; order <= 4; order++) {
+      moments[order] /= n;
+    }
+    return moments;
+  }
+}
@@ -26,6 +26,8 @@ class SubstituteClassReferences implements AsmVisitorWrapper {
 
   private static final Pattern JAVA_TYPE = Pattern.compile("[\\w/$]+");
   private static final Pattern NESTED_TYPE = Pattern.compile("L[\\w/$]+");
+  private static final String UNSAFE = "sun/misc/Unsafe";
+  private static final String UNSAFE_ACCESS = UnsafeAccess.FORKED_NAME.replace('.', '/');
 
   private final UnaryOperator<String> renameMethod;
 
@@ -165,6 +167,15 @@ class SubstituteClassReferences implements AsmVisitorWrapper {
                 name, rename(descriptor), rename(bootstrapMethodHandle), rename(bootstrapMethodArguments));
           }
 
+          @Override
+          public void visitLdcInsn(Object value) {
+            if (value instanceof Type || value instanceof Handle) {
+              super.visitLdcInsn(rename(new Object[] { value })[0]);
+            } else {
+              super.visitLdcInsn(value);
+            }
+          }
+
           @Override
           public void visitLocalVariable(
               String variableName,
@@ -198,7 +209,13 @@ class SubstituteClassReferences implements AsmVisitorWrapper {
           @Override
           public void visitMethodInsn(
               int opcode, String owner, String name, String descriptor, boolean isInterface) {
-            super.visitMethodInsn(opcode, rename(owner), name, rename(descriptor), isInterface);
+            if (opcode == Opcodes.INVOKESTATIC && owner.equals(UNSAFE) && name.equals("getUnsafe")) {
+              // Unsafe.getUnsafe() rejects callers outside the bootstrap class-loader, i.e. all forked core classes
+              super.visitMethodInsn(opcode, UNSAFE_ACCESS, name, "()Ljava/lang/Object;", false);
+              super.visitTypeInsn(Opcodes.CHECKCAST, UNSAFE);
+            } else {
+              super.visitMethodInsn(opcode, rename(owner), name, rename(descriptor), isInterface);
+            }
           }
 
           @Override
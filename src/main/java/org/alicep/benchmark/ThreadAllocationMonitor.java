@@ -0,0 +1,167 @@
+package org.alicep.benchmark;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Attributes allocations to the thread that made them, rather than watching Eden.
+ *
+ * <p>Measures the thread that created the monitor, plus any work run through {@code executor}, and ignores everything
+ * else allocating on the JVM. Unlike {@link EdenMonitor}, results are accurate to the byte and do not depend on the
+ * garbage collector in use. Reading the counter allocates nothing on recent JVMs; earlier Java 8 releases allocate a
+ * fixed amount per read, which is calibrated at startup and subtracted from every sample.
+ */
+class ThreadAllocationMonitor implements AllocationMonitor {
+
+  private static final ThreadMXBean THREADS = threadBean();
+
+  /**
+   * Bytes allocated by a single call to {@link #currentThreadAllocatedBytes()}.
+   */
+  static final long READ_OVERHEAD_BYTES = calibrateReadOverhead();
+
+  private static final boolean PRECISE = selfTest();
+
+  /**
+   * Used to prevent HotSpot optimizing away unused objects. Volatile just to be certain.
+   */
+  @SuppressWarnings("unused")
+  private static volatile Object sink;
+
+  public static boolean isAvailable() {
+    return THREADS != null;
+  }
+
+  /**
+   * Returns whether per-thread counters measure allocations to the byte, once {@link #READ_OVERHEAD_BYTES} is
+   * subtracted.
+   */
+  public static boolean isPrecise() {
+    return PRECISE;
+  }
+
+  /**
+   * Returns the total number of bytes allocated by the current thread, including the overhead of this call.
+   */
+  static long currentThreadAllocatedBytes() {
+    return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Returns the total number of bytes allocated by each of the given threads, or -1 for any no longer alive.
+   */
+  static long[] threadAllocatedBytes(long[] ids) {
+    return THREADS.getThreadAllocatedBytes(ids);
+  }
+
+  private final Thread thread;
+  private final AllocationTrackingExecutor executor;
+  private long lastThreadAllocated;
+  private long lastExecutorAllocated;
+
+  /**
+   * Monitors allocations made by the current thread only.
+   */
+  ThreadAllocationMonitor() {
+    this(null);
+  }
+
+  ThreadAllocationMonitor(AllocationTrackingExecutor executor) {
+    checkState(isAvailable(), "Per-thread allocation counters not supported by this JVM");
+    this.thread = Thread.currentThread();
+    this.executor = executor;
+    AllocationTrackingExecutor.enterTrackedRegion();
+    lastExecutorAllocated = executorAllocatedBytes();
+    lastThreadAllocated = currentThreadAllocatedBytes();
+  }
+
+  /**
+   * Returns the memory allocated by the monitored thread and executor since construction, or the last call to
+   * {@link #sample()}.
+   *
+   * <p>Must be called from the thread that created the monitor.
+   */
+  @Override
+  public long sample() {
+    if (Thread.currentThread() != thread) {
+      throw new IllegalStateException("Must be sampled from " + thread.getName());
+    }
+    long executorAllocated = executorAllocatedBytes();
+    long threadAllocated = currentThreadAllocatedBytes();
+    long allocated = threadAllocated - lastThreadAllocated - READ_OVERHEAD_BYTES
+        + executorAllocated - lastExecutorAllocated;
+    lastThreadAllocated = threadAllocated;
+    lastExecutorAllocated = executorAllocated;
+    return allocated;
+  }
+
+  @Override
+  public int samplingRepeats() {
+    return AllocationMonitor.repeatsPerSample();
+  }
+
+  @Override
+  public void close() {
+    AllocationTrackingExecutor.exitTrackedRegion();
+  }
+
+  private long executorAllocatedBytes() {
+    return (executor == null) ? 0 : executor.allocatedBytes();
+  }
+
+  private static ThreadMXBean threadBean() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof ThreadMXBean)) {
+      return null;
+    }
+    ThreadMXBean threadBean = (ThreadMXBean) bean;
+    if (!threadBean.isThreadAllocatedMemorySupported()) {
+      return null;
+    }
+    threadBean.setThreadAllocatedMemoryEnabled(true);
+    return threadBean;
+  }
+
+  private static long calibrateReadOverhead() {
+    if (THREADS == null) {
+      return 0;
+    }
+    long overhead = Long.MAX_VALUE;
+    for (int i = 0; i < 16; ++i) {
+      long first = currentThreadAllocatedBytes();
+      long second = currentThreadAllocatedBytes();
+      overhead = Math.min(overhead, second - first);
+    }
+    return overhead;
+  }
+
+  /**
+   * Checks that reading the counter always allocates exactly {@link #READ_OVERHEAD_BYTES}, and that, once that is
+   * subtracted, it sees a known allocation exactly.
+   */
+  private static boolean selfTest() {
+    if (THREADS == null) {
+      return false;
+    }
+    for (int i = 0; i < 16; ++i) {
+      long first = currentThreadAllocatedBytes();
+      long second = currentThreadAllocatedBytes();
+      if (second - first != READ_OVERHEAD_BYTES) {
+        return false;
+      }
+      long start = currentThreadAllocatedBytes();
+      sink = new long[0];
+      long middle = currentThreadAllocatedBytes();
+      sink = new long[16];
+      long end = currentThreadAllocatedBytes();
+      if ((end - middle) - (middle - start) != 16 * Long.BYTES) {
+        return false;
+      }
+    }
+    sink = null;
+    return true;
+  }
+}
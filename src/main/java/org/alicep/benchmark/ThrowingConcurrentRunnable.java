@@ -0,0 +1,7 @@
+package org.alicep.benchmark;
+
+import java.util.concurrent.Executor;
+
+public interface ThrowingConcurrentRunnable {
+  Object run(Executor executor) throws Throwable;
+}
@@ -0,0 +1,27 @@
+package org.alicep.benchmark;
+
+import java.lang.reflect.Field;
+
+/**
+ * Stands in for {@code sun.misc.Unsafe.getUnsafe()} in forked core classes, which that method would reject.
+ *
+ * <p>Never called directly: {@link ForkingClassLoader} forks a public copy of this class for forked core classes to
+ * call, and casts the result back to {@code Unsafe} at each call site. Naming {@code Unsafe} only reflectively keeps
+ * the proprietary API out of this project's compile.
+ */
+final class UnsafeAccess {
+
+  static final String FORKED_NAME = ForkingClassLoader.FORK_PACKAGE + UnsafeAccess.class.getName();
+
+  public static Object getUnsafe() {
+    try {
+      Field theUnsafe = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      return theUnsafe.get(null);
+    } catch (ReflectiveOperationException e) {
+      throw new SecurityException("Unsafe", e);
+    }
+  }
+
+  private UnsafeAccess() { }
+}
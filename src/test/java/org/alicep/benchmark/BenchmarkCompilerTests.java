@@ -0,0 +1,48 @@
+package org.alicep.benchmark;
+
+import static org.alicep.benchmark.BenchmarkCompiler.literal;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class BenchmarkCompilerTests {
+
+  @Test
+  public void literal_boxedPrimitives() {
+    assertThat(literal(3)).isEqualTo("java.lang.Integer.valueOf(3)");
+    assertThat(literal(3L)).isEqualTo("java.lang.Long.valueOf(3L)");
+    assertThat(literal(0.5)).isEqualTo("java.lang.Double.valueOf(0.5)");
+    assertThat(literal(true)).isEqualTo("java.lang.Boolean.TRUE");
+  }
+
+  @Test
+  public void literal_shortAndByte() {
+    assertThat(literal((short) -3)).isEqualTo("java.lang.Short.valueOf((short) -3)");
+    assertThat(literal((byte) 7)).isEqualTo("java.lang.Byte.valueOf((byte) 7)");
+  }
+
+  @Test
+  public void literal_enum() {
+    assertThat(literal(TimeUnit.SECONDS)).isEqualTo("java.util.concurrent.TimeUnit.SECONDS");
+  }
+
+  @Test
+  public void literal_stringEscapesControlCharactersWithoutUnicodeEscapes() {
+    assertThat(literal("a\nb\r\t\b\f\u0001")).isEqualTo("\"a\\nb\\r\\t\\b\\f\\001\"");
+  }
+
+  @Test
+  public void literal_stringEscapesQuotesAndNonAscii() {
+    assertThat(literal("say \"\u00e9\" \\")).isEqualTo("\"say \\\"\\u00e9\\\" \\\\\"");
+  }
+
+  @Test
+  public void literal_nonFiniteRejected() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> literal(Double.NaN))
+        .withMessage("Cannot inline Double NaN");
+  }
+}
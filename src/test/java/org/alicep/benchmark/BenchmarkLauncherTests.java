@@ -0,0 +1,106 @@
+package org.alicep.benchmark;
+
+import static org.alicep.benchmark.BenchmarkLauncher.checkConfigurationNames;
+import static org.alicep.benchmark.BenchmarkLauncher.csv;
+import static org.alicep.benchmark.BenchmarkLauncher.json;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.alicep.benchmark.BenchmarkRunner.Configuration;
+import org.junit.Test;
+
+public class BenchmarkLauncherTests {
+
+  public static class Sized {
+    @Configuration public static final List<Integer> size = Arrays.asList(1);
+  }
+
+  public static class Kinded {
+    @Configuration public static final List<String> kind = Arrays.asList("a");
+    @Configuration public static final List<String> mode = Arrays.asList("b");
+  }
+
+  @Test
+  public void validOptions_accepted() {
+    new BenchmarkLauncher(
+        "-i", "Foo", "--include", "Bar\\.baz", "-e", "Slow", "-p", "size=1,2", "-f", "json", "-o", "out.json", "-l",
+        "build/classes");
+  }
+
+  @Test
+  public void unknownOption_rejected() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> new BenchmarkLauncher("--verbose"))
+        .withMessage("Unknown option --verbose");
+  }
+
+  @Test
+  public void missingValue_rejected() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> new BenchmarkLauncher("-i", "Foo", "-o"))
+        .withMessage("Missing value after -o");
+  }
+
+  @Test
+  public void unknownFormat_rejected() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> new BenchmarkLauncher("--format", "xml"))
+        .withMessage("Unknown format xml");
+  }
+
+  @Test
+  public void configurationWithoutName_rejected() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> new BenchmarkLauncher("-p", "=1,2"))
+        .withMessage("Expected NAME=V1,V2,... after -p, not =1,2");
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> new BenchmarkLauncher("-p", "size"))
+        .withMessage("Expected NAME=V1,V2,... after -p, not size");
+  }
+
+  @Test
+  public void configurationNames_matchAnyClass() {
+    checkConfigurationNames(Arrays.asList("size", "kind"), Arrays.asList(Sized.class, Kinded.class));
+  }
+
+  @Test
+  public void unknownConfigurationName_rejected() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> checkConfigurationNames(
+            Arrays.asList("size", "szie"), Arrays.asList(Sized.class, Kinded.class)))
+        .withMessage(
+            "No @Configuration field called szie in the matching benchmarks; expected one of: kind, mode, size");
+  }
+
+  @Test
+  public void invalidPattern_rejected() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> new BenchmarkLauncher("-e", "("));
+  }
+
+  @Test
+  public void json_nonFiniteNumbersAreNull() {
+    assertThat(json(Double.NaN)).isEqualTo("null");
+    assertThat(json(Double.POSITIVE_INFINITY)).isEqualTo("null");
+    assertThat(json(Float.NEGATIVE_INFINITY)).isEqualTo("null");
+    assertThat(json(1.5)).isEqualTo("1.5");
+    assertThat(json(42L)).isEqualTo("42");
+    assertThat(json(null)).isEqualTo("null");
+  }
+
+  @Test
+  public void json_escapesStrings() {
+    assertThat(json("a \"b\" \\ c\n")).isEqualTo("\"a \\\"b\\\" \\\\ c\\u000a\"");
+  }
+
+  @Test
+  public void csv_quotesOnlyWhenNeeded() {
+    assertThat(csv("plain")).isEqualTo("plain");
+    assertThat(csv("size=1, kind=a")).isEqualTo("\"size=1, kind=a\"");
+    assertThat(csv("say \"hi\"")).isEqualTo("\"say \"\"hi\"\"\"");
+    assertThat(csv(null)).isEmpty();
+  }
+}
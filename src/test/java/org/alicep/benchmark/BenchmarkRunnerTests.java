@@ -0,0 +1,115 @@
+package org.alicep.benchmark;
+
+import static org.alicep.benchmark.BenchmarkRunner.parseConfigurations;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.alicep.benchmark.BenchmarkRunner.Benchmark;
+import org.alicep.benchmark.BenchmarkRunner.Configuration;
+import org.alicep.benchmark.BenchmarkRunner.OperationsPerInvocation;
+import org.junit.Test;
+import org.junit.runners.model.FrameworkField;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.TestClass;
+
+public class BenchmarkRunnerTests {
+
+  public static class Configurations {
+    @Configuration public static final List<Integer> ints = Arrays.asList(1);
+    @Configuration public static final List<Long> longs = Arrays.asList(1L);
+    @Configuration public static final List<Double> doubles = Arrays.asList(1.0);
+    @Configuration public static final List<Boolean> booleans = Arrays.asList(true);
+    @Configuration public static final List<TimeUnit> units = Arrays.asList(TimeUnit.SECONDS);
+    @Configuration public static final List<String> strings = Arrays.asList("a");
+    @Configuration public static final List<?> empty = Collections.emptyList();
+    @Configuration public static final List<Object> objects = Arrays.asList(new Object());
+  }
+
+  public static class GridOperationsFromConfiguration {
+    @Configuration public static final List<Integer> sizes = Arrays.asList(1);
+    @Configuration public static final List<Integer> widths = Arrays.asList(1);
+
+    public GridOperationsFromConfiguration(int size, int width) { }
+
+    @Benchmark
+    @OperationsPerInvocation(fromConfiguration = true)
+    public void run() { }
+  }
+
+  @Test
+  public void operationsFromConfiguration_rejectedOnGrids() {
+    assertThatExceptionOfType(InitializationError.class)
+        .isThrownBy(() -> new BenchmarkRunner(GridOperationsFromConfiguration.class))
+        .satisfies(e -> assertThat(e.getCauses()).extracting(Throwable::getMessage).containsExactly(
+            "@OperationsPerInvocation(fromConfiguration = true) run needs a single @Configuration field"));
+  }
+
+  @Test
+  public void parseConfigurations_ints() throws IllegalAccessException {
+    assertThat(parseConfigurations(field("ints"), "1, 20,300")).containsExactly(1, 20, 300);
+  }
+
+  @Test
+  public void parseConfigurations_longs() throws IllegalAccessException {
+    assertThat(parseConfigurations(field("longs"), "10000000000")).containsExactly(10000000000L);
+  }
+
+  @Test
+  public void parseConfigurations_doubles() throws IllegalAccessException {
+    assertThat(parseConfigurations(field("doubles"), "0.5,1e3")).containsExactly(0.5, 1000.0);
+  }
+
+  @Test
+  public void parseConfigurations_booleans() throws IllegalAccessException {
+    assertThat(parseConfigurations(field("booleans"), "true,false")).containsExactly(true, false);
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> parseConfigurations(field("booleans"), "yes"))
+        .withMessage("Cannot parse \"yes\" as a Boolean for @Configuration booleans");
+  }
+
+  @Test
+  public void parseConfigurations_enums() throws IllegalAccessException {
+    assertThat(parseConfigurations(field("units"), "NANOSECONDS,DAYS"))
+        .containsExactly(TimeUnit.NANOSECONDS, TimeUnit.DAYS);
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> parseConfigurations(field("units"), "FORTNIGHTS"))
+        .withMessage("Cannot parse \"FORTNIGHTS\" as a TimeUnit for @Configuration units");
+  }
+
+  @Test
+  public void parseConfigurations_stringsKeepEmptyValues() throws IllegalAccessException {
+    assertThat(parseConfigurations(field("strings"), "x,,y")).containsExactly("x", "", "y");
+  }
+
+  @Test
+  public void parseConfigurations_emptyListParsedAsStrings() throws IllegalAccessException {
+    assertThat(parseConfigurations(field("empty"), "1,2")).containsExactly("1", "2");
+  }
+
+  @Test
+  public void parseConfigurations_badNumber() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> parseConfigurations(field("ints"), "1,two"))
+        .withMessage("Cannot parse \"two\" as a Integer for @Configuration ints");
+  }
+
+  @Test
+  public void parseConfigurations_unsupportedType() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> parseConfigurations(field("objects"), "1"))
+        .withMessage("Cannot override @Configuration objects of Object values");
+  }
+
+  private static FrameworkField field(String name) {
+    return new TestClass(Configurations.class).getAnnotatedFields(Configuration.class)
+        .stream()
+        .filter(field -> field.getName().equals(name))
+        .findFirst()
+        .get();
+  }
+}
@@ -0,0 +1,51 @@
+package org.alicep.benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.Assume.assumeFalse;
+
+import org.alicep.benchmark.BenchmarkCompiler.HotLoopOptions;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CalibrationTests {
+
+  private final Calibration calibration =
+      new Calibration(HotLoopOptions.DEFAULT, 20, 1, new Statistics.Interval(1.0, 0.9, 1.2));
+
+  @Before
+  public void calibrationEnabled() {
+    assumeFalse("Calibration disabled", "false".equals(System.getProperty("benchmark.calibrate")));
+  }
+
+  @Test
+  public void correct_subtractsEmptyLoop() {
+    Statistics.Interval corrected = calibration.correct(new Statistics.Interval(5.0, 4.5, 6.0));
+    assertThat(corrected.estimate).isCloseTo(4.0, within(1e-9));
+    assertThat(corrected.lower).isCloseTo(3.5, within(1e-9));
+    assertThat(corrected.upper).isCloseTo(5.0, within(1e-9));
+  }
+
+  @Test
+  public void correct_clampsLowerBoundAtZero() {
+    Statistics.Interval corrected = calibration.correct(new Statistics.Interval(1.5, 0.5, 2.5));
+    assertThat(corrected.estimate).isCloseTo(0.5, within(1e-9));
+    assertThat(corrected.lower).isZero();
+    assertThat(corrected.upper).isCloseTo(1.5, within(1e-9));
+  }
+
+  @Test
+  public void correct_leavesResultsAtFloorUnchanged() {
+    Statistics.Interval atFloor = new Statistics.Interval(1.2, 1.0, 1.4);
+    assertThat(calibration.isAtFloor(atFloor.estimate)).isTrue();
+    assertThat(calibration.correct(atFloor)).isSameAs(atFloor);
+  }
+
+  @Test
+  public void isAtFloor_upToUpperEndOfEmptyLoopInterval() {
+    assertThat(calibration.floorNanos()).isEqualTo(1.2);
+    assertThat(calibration.isAtFloor(0.1)).isTrue();
+    assertThat(calibration.isAtFloor(1.2)).isTrue();
+    assertThat(calibration.isAtFloor(1.21)).isFalse();
+  }
+}
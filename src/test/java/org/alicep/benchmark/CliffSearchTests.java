@@ -0,0 +1,157 @@
+package org.alicep.benchmark;
+
+import static java.util.stream.Collectors.toList;
+import static org.alicep.benchmark.CliffSearch.isSplittable;
+import static org.alicep.benchmark.CliffSearch.midpoint;
+import static org.alicep.benchmark.CliffSearch.removeOutliers;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.alicep.benchmark.CliffSearch.Point;
+import org.junit.Test;
+import org.junit.runner.Description;
+
+public class CliffSearchTests {
+
+  @Test
+  public void midpoint_int_geometricMeanOfPositives() {
+    assertThat(midpoint(1, 100)).isEqualTo(10);
+    assertThat(midpoint(100, 102)).isEqualTo(101);
+  }
+
+  @Test
+  public void midpoint_int_arithmeticMeanFromZeroOrBelow() {
+    assertThat(midpoint(0, 10)).isEqualTo(5);
+    assertThat(midpoint(-10, -2)).isEqualTo(-6);
+  }
+
+  @Test
+  public void midpoint_int_strictlyBetweenNeighbours() {
+    // The geometric mean of 1 and 3 rounds to 2; of 1000 and 1002, to 1001
+    assertThat(midpoint(1, 3)).isEqualTo(2);
+    assertThat(midpoint(1000, 1002)).isEqualTo(1001);
+    assertThat(midpoint(Integer.MAX_VALUE - 2, Integer.MAX_VALUE)).isEqualTo(Integer.MAX_VALUE - 1);
+  }
+
+  @Test
+  public void midpoint_long() {
+    assertThat(midpoint(1L, 1_000_000L)).isEqualTo(1000L);
+    assertThat(midpoint(4L, 6L)).isEqualTo(5L);
+    assertThat(midpoint(-5L, 5L)).isEqualTo(0L);
+  }
+
+  @Test
+  public void midpoint_double() {
+    assertThat(midpoint(1.0, 4.0)).isEqualTo(2.0);
+    assertThat(midpoint(-1.0, 1.0)).isEqualTo(0.0);
+    assertThat(midpoint(0.0, 0.5)).isEqualTo(0.25);
+  }
+
+  @Test
+  public void midpoint_float() {
+    assertThat(midpoint(1f, 4f)).isEqualTo(2f);
+  }
+
+  @Test
+  public void midpoint_shortAndByte() {
+    assertThat(midpoint((short) 1, (short) 100)).isEqualTo((short) 10);
+    assertThat(midpoint((byte) -10, (byte) -2)).isEqualTo((byte) -6);
+    assertThat(midpoint((byte) (Byte.MAX_VALUE - 2), Byte.MAX_VALUE)).isEqualTo((byte) (Byte.MAX_VALUE - 1));
+  }
+
+  @Test
+  public void isSplittable_int() {
+    assertThat(isSplittable(1, 2)).isFalse();
+    assertThat(isSplittable(1, 3)).isTrue();
+    assertThat(isSplittable(-1, 1)).isTrue();
+    assertThat(isSplittable(-1, 0)).isFalse();
+  }
+
+  @Test
+  public void isSplittable_long() {
+    assertThat(isSplittable(Long.MAX_VALUE - 1, Long.MAX_VALUE)).isFalse();
+    assertThat(isSplittable(Long.MAX_VALUE - 2, Long.MAX_VALUE)).isTrue();
+    assertThat(isSplittable(1L << 40, (1L << 40) + 1)).isFalse();
+  }
+
+  @Test
+  public void isSplittable_shortAndByte() {
+    assertThat(isSplittable((short) 1, (short) 2)).isFalse();
+    assertThat(isSplittable((byte) 1, (byte) 3)).isTrue();
+  }
+
+  @Test
+  public void removeOutliers_dropsPointDisagreeingWithAgreeingNeighbours() {
+    List<Point> points = points(10, 10, 30, 10, 10);
+    List<Point> outliers = new ArrayList<>();
+    removeOutliers(points, outliers, 0.2);
+    assertThat(values(points)).containsExactly(1, 2, 4, 5);
+    assertThat(values(outliers)).containsExactly(3);
+  }
+
+  @Test
+  public void removeOutliers_keepsCliffs() {
+    List<Point> points = points(10, 10, 30, 30, 30);
+    List<Point> outliers = new ArrayList<>();
+    removeOutliers(points, outliers, 0.2);
+    assertThat(values(points)).containsExactly(1, 2, 3, 4, 5);
+    assertThat(outliers).isEmpty();
+  }
+
+  @Test
+  public void removeOutliers_keepsEndpoints() {
+    List<Point> points = points(30, 10, 10, 10, 30);
+    List<Point> outliers = new ArrayList<>();
+    removeOutliers(points, outliers, 0.2);
+    assertThat(values(points)).containsExactly(1, 2, 3, 4, 5);
+    assertThat(outliers).isEmpty();
+  }
+
+  @Test
+  public void removeOutliers_dropsEachSeparateOutlier() {
+    List<Point> points = points(10, 10, 30, 10, 30, 10);
+    List<Point> outliers = new ArrayList<>();
+    removeOutliers(points, outliers, 0.2);
+    assertThat(values(points)).containsExactly(1, 2, 4, 6);
+    assertThat(values(outliers)).containsExactly(3, 5);
+  }
+
+  @Test
+  public void isSplittable_double() {
+    assertThat(isSplittable(1.0, 1.005)).isFalse();
+    assertThat(isSplittable(1.0, 1.02)).isTrue();
+    assertThat(isSplittable(100.0, 101.0)).isFalse();
+    assertThat(isSplittable(-1.0, 1.0)).isTrue();
+  }
+
+  /**
+   * Returns points at 1, 2, 3... taking the given nanoseconds per element, with no measurement error.
+   */
+  private static List<Point> points(double... nanosPerElement) {
+    List<Point> points = new ArrayList<>();
+    for (int i = 0; i < nanosPerElement.length; i++) {
+      int value = i + 1;
+      double meanNanos = nanosPerElement[i] * value;
+      SingleBenchmark benchmark = new SingleBenchmark(
+          Description.createTestDescription(CliffSearchTests.class, "point" + value), () -> null) {
+        @Override
+        double meanNanos() {
+          return meanNanos;
+        }
+
+        @Override
+        double errorNanos() {
+          return 0;
+        }
+      };
+      points.add(new Point(value, benchmark));
+    }
+    return points;
+  }
+
+  private static List<Number> values(List<Point> points) {
+    return points.stream().map(point -> point.value).collect(toList());
+  }
+}
@@ -0,0 +1,226 @@
+package org.alicep.benchmark;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.alicep.benchmark.BenchmarkRunner.Configuration;
+import org.alicep.benchmark.BenchmarkRunner.ConfigurationFilter;
+import org.junit.Test;
+import org.junit.runners.model.TestClass;
+
+import com.google.common.collect.ImmutableMap;
+
+public class ConfigurationGridTests {
+
+  public static class TwoDimensions {
+    @Configuration public static final List<Integer> size = Arrays.asList(1, 20);
+    @Configuration public static final List<String> kind = Arrays.asList("a", "bb", "c");
+  }
+
+  public static class Filtered {
+    @Configuration public static final List<Integer> low = Arrays.asList(1, 2, 3);
+    @Configuration public static final List<Integer> high = Arrays.asList(1, 2, 3);
+
+    @ConfigurationFilter
+    public static boolean ordered(int low, int high) {
+      return low < high;
+    }
+  }
+
+  public static class DeclaredOutOfAlphabeticalOrder {
+    @Configuration public static final List<String> zebra = Arrays.asList("z");
+    @Configuration public static final List<String> apple = Arrays.asList("a");
+    @Configuration public static final List<String> mango = Arrays.asList("m");
+  }
+
+  public static class Base {
+    @Configuration public static final List<String> zebra = Arrays.asList("z");
+    @Configuration public static final List<String> apple = Arrays.asList("a");
+  }
+
+  public static class Inheriting extends Base {
+    @Configuration public static final List<String> mango = Arrays.asList("m");
+    @Configuration public static final List<String> banana = Arrays.asList("b");
+  }
+
+  public static class FilterReturningInt {
+    @Configuration public static final List<Integer> size = Arrays.asList(1);
+
+    @ConfigurationFilter
+    public static int accept(int size) {
+      return 1;
+    }
+  }
+
+  public static class FilterOfWrongType {
+    @Configuration public static final List<Integer> size = Arrays.asList(1);
+    @Configuration public static final List<String> kind = Arrays.asList("a");
+
+    @ConfigurationFilter
+    public static boolean accept(int size, int kind) {
+      return true;
+    }
+  }
+
+  public static class FilterWideningParameters {
+    @Configuration public static final List<Integer> size = Arrays.asList(1, 2);
+    @Configuration public static final List<Character> letter = Arrays.asList('a', 'b');
+
+    @ConfigurationFilter
+    public static Boolean accept(long size, int letter) {
+      return size + 'a' - 1 == letter;
+    }
+  }
+
+  public static class NonStatic {
+    @Configuration public final List<Integer> size = Arrays.asList(1);
+  }
+
+  public static class TwoFilters {
+    @Configuration public static final List<Integer> size = Arrays.asList(1);
+
+    @ConfigurationFilter
+    public static boolean first(int size) {
+      return true;
+    }
+
+    @ConfigurationFilter
+    public static boolean second(int size) {
+      return true;
+    }
+  }
+
+  public static class FilterMissingParameter {
+    @Configuration public static final List<Integer> size = Arrays.asList(1);
+    @Configuration public static final List<String> kind = Arrays.asList("a");
+
+    @ConfigurationFilter
+    public static boolean accept(int size) {
+      return true;
+    }
+  }
+
+  public static class ThrowingFilter {
+    @Configuration public static final List<Integer> size = Arrays.asList(1, 2);
+
+    @ConfigurationFilter
+    public static boolean accept(int size) {
+      throw new UnsupportedOperationException("size " + size);
+    }
+  }
+
+  @Test
+  public void points_varyLastDimensionFastest() throws IllegalAccessException {
+    ConfigurationGrid grid = grid(TwoDimensions.class);
+    assertThat(grid.points().stream().map(Object::toString).collect(toList())).containsExactly(
+        "size=1, kind=a",
+        "size=1, kind=bb",
+        "size=1, kind=c",
+        "size=20, kind=a",
+        "size=20, kind=bb",
+        "size=20, kind=c");
+    assertThat(grid.points().get(4).indices()).containsExactly(1, 1);
+  }
+
+  @Test
+  public void fields_inDeclarationOrder() throws IllegalAccessException {
+    ConfigurationGrid grid = grid(DeclaredOutOfAlphabeticalOrder.class);
+    assertThat(grid.fields().stream().map(field -> field.getName()).collect(toList()))
+        .containsExactly("zebra", "apple", "mango");
+    assertThat(grid.header()).isEqualTo("zebra  apple  mango");
+  }
+
+  @Test
+  public void fields_superclassFieldsFirst() throws IllegalAccessException {
+    ConfigurationGrid grid = grid(Inheriting.class);
+    assertThat(grid.fields().stream().map(field -> field.getName()).collect(toList()))
+        .containsExactly("zebra", "apple", "mango", "banana");
+  }
+
+  @Test
+  public void filter_unboxesAndWidensParameters() throws IllegalAccessException {
+    ConfigurationGrid grid = grid(FilterWideningParameters.class);
+    assertThat(grid.points().stream().map(Object::toString).collect(toList())).containsExactly(
+        "size=1, letter=a",
+        "size=2, letter=b");
+  }
+
+  @Test
+  public void filter_dropsRejectedPointsKeepingOrder() throws IllegalAccessException {
+    ConfigurationGrid grid = grid(Filtered.class);
+    assertThat(grid.points().stream().map(Object::toString).collect(toList())).containsExactly(
+        "low=1, high=2",
+        "low=1, high=3",
+        "low=2, high=3");
+  }
+
+  @Test
+  public void overrides_replaceFieldValues() throws Exception {
+    ConfigurationGrid grid = ConfigurationGrid.of(
+        new TestClass(TwoDimensions.class),
+        ImmutableMap.of(TwoDimensions.class.getField("size"), Arrays.asList(7)));
+    assertThat(grid.points().stream().map(Object::toString).collect(toList())).containsExactly(
+        "size=7, kind=a",
+        "size=7, kind=bb",
+        "size=7, kind=c");
+  }
+
+  @Test
+  public void rows_alignWithHeader() throws IllegalAccessException {
+    ConfigurationGrid grid = grid(TwoDimensions.class);
+    assertThat(grid.header()).isEqualTo("size  kind");
+    assertThat(grid.points().get(0).row()).isEqualTo("1     a   ");
+    assertThat(grid.points().get(4).row()).isEqualTo("20    bb  ");
+  }
+
+  @Test
+  public void nonStaticField_rejected() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> grid(NonStatic.class))
+        .withMessage("@Configuration field size must be static");
+  }
+
+  @Test
+  public void twoFilters_rejected() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> grid(TwoFilters.class))
+        .withMessage("Only one @ConfigurationFilter method is allowed");
+  }
+
+  @Test
+  public void filterMissingParameter_rejected() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> grid(FilterMissingParameter.class))
+        .withMessage("@ConfigurationFilter accept must take one parameter per @Configuration field");
+  }
+
+  @Test
+  public void filterReturningInt_rejected() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> grid(FilterReturningInt.class))
+        .withMessage("@ConfigurationFilter accept must return boolean");
+  }
+
+  @Test
+  public void filterOfWrongType_rejected() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> grid(FilterOfWrongType.class))
+        .withMessage("@ConfigurationFilter accept parameter 2 cannot take @Configuration kind value a");
+  }
+
+  @Test
+  public void throwingFilter_namesPoint() {
+    assertThatExceptionOfType(IllegalStateException.class)
+        .isThrownBy(() -> grid(ThrowingFilter.class))
+        .withMessage("@ConfigurationFilter failed on size=1")
+        .withCauseInstanceOf(UnsupportedOperationException.class);
+  }
+
+  private static ConfigurationGrid grid(Class<?> cls) throws IllegalAccessException {
+    return ConfigurationGrid.of(new TestClass(cls), ImmutableMap.of());
+  }
+}
@@ -0,0 +1,56 @@
+package org.alicep.benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class EnvironmentTests {
+
+  @Test
+  public void instance_capturedOnce() {
+    assertThat(Environment.instance()).isSameAs(Environment.instance());
+  }
+
+  @Test
+  public void fingerprint_keysInFixedOrder() {
+    assertThat(new Environment().fingerprint().keySet()).containsExactly(
+        "os", "cpu", "cores", "governor", "turbo", "jvm", "jvmArguments", "gc", "initialHeapBytes",
+        "maxHeapBytes", "loadAverage");
+  }
+
+  @Test
+  public void fingerprint_stableAcrossCaptures() {
+    Map<String, Object> first = withoutLoadAverage(new Environment().fingerprint());
+    Map<String, Object> second = withoutLoadAverage(new Environment().fingerprint());
+    assertThat(second).isEqualTo(first);
+    assertThat(second.keySet()).containsExactlyElementsOf(first.keySet());
+    assertThat(withoutLoadAverage(Environment.instance().fingerprint())).isEqualTo(first);
+  }
+
+  @Test
+  public void fingerprint_valuesAreScalars() {
+    new Environment().fingerprint().forEach((key, value) -> assertThat(value)
+        .as(key)
+        .matches(v -> v == null || v instanceof String || v instanceof Number || v instanceof Boolean));
+    assertThat(new Environment().fingerprint().get("cores")).isEqualTo(Runtime.getRuntime().availableProcessors());
+  }
+
+  @Test
+  public void fingerprint_unmodifiable() {
+    assertThatThrownBy(() -> Environment.instance().fingerprint().put("cores", 0))
+        .isInstanceOf(UnsupportedOperationException.class);
+  }
+
+  /**
+   * Returns {@code fingerprint} less its load average, the one property expected to change within a JVM.
+   */
+  private static Map<String, Object> withoutLoadAverage(Map<String, Object> fingerprint) {
+    Map<String, Object> stable = new LinkedHashMap<>(fingerprint);
+    stable.remove("loadAverage");
+    return stable;
+  }
+}
@@ -0,0 +1,43 @@
+package org.alicep.benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.Description;
+
+public class FlightRecordingTests {
+
+  private final Properties originalProperties = (Properties) System.getProperties().clone();
+
+  @After
+  public void restoreProperties() {
+    System.setProperties(originalProperties);
+  }
+
+  @Test
+  public void fileName_unforked() {
+    System.clearProperty("benchmark.forkedJvm");
+    assertThat(FlightRecording.fileName(description(), ".jfr")).isEqualTo("com.example.Bench.sum_size_10_.jfr");
+  }
+
+  @Test
+  public void fileName_distinguishesForkedFlagSets() {
+    System.setProperty("benchmark.forkedJvm", "true");
+    System.setProperty("benchmark.forkedJvmArgs", "-XX:+UseG1GC");
+    String enabled = FlightRecording.fileName(description(), ".jfr");
+    System.setProperty("benchmark.forkedJvmArgs", "-XX:-UseG1GC");
+    String disabled = FlightRecording.fileName(description(), ".jfr");
+    System.setProperty("benchmark.forkedJvmArgs", "");
+    String defaults = FlightRecording.fileName(description(), ".jfr");
+    assertThat(enabled).isEqualTo("com.example.Bench.sum_size_10_-XX_UseG1GC.jfr");
+    assertThat(disabled).isEqualTo("com.example.Bench.sum_size_10_-XX_-UseG1GC.jfr");
+    assertThat(defaults).isEqualTo("com.example.Bench.sum_size_10_default_flags.jfr");
+  }
+
+  private static Description description() {
+    return Description.createTestDescription("com.example.Bench", "sum [size=10]");
+  }
+}
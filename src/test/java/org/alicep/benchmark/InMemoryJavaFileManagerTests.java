@@ -0,0 +1,94 @@
+package org.alicep.benchmark;
+
+import static javax.tools.JavaFileObject.Kind.CLASS;
+import static javax.tools.JavaFileObject.Kind.SOURCE;
+import static javax.tools.StandardLocation.CLASS_OUTPUT;
+import static javax.tools.StandardLocation.SOURCE_OUTPUT;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import javax.tools.JavaFileObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InMemoryJavaFileManagerTests {
+
+  private InMemoryJavaFileManager fileManager;
+
+  @Before
+  public void createFiles() {
+    fileManager = InMemoryJavaFileManager.create(null);
+    for (String className : new String[] { "Top", "a.A", "a.b.B", "a.b.B$Inner", "a.b.c.C", "a.bc.D", "a.b0.E" }) {
+      fileManager.getJavaFileForOutput(CLASS_OUTPUT, className, CLASS, null);
+    }
+    fileManager.getJavaFileForOutput(SOURCE_OUTPUT, "a.b.Source", SOURCE, null);
+  }
+
+  @After
+  public void close() {
+    fileManager.close();
+  }
+
+  @Test
+  public void list_directoryExcludesSiblingPrefixes() throws IOException {
+    assertThat(list("a.b", false)).containsExactlyInAnyOrder("a/b/B.class", "a/b/B$Inner.class");
+  }
+
+  @Test
+  public void list_recursiveIncludesSubdirectoriesButNotSiblingPrefixes() throws IOException {
+    assertThat(list("a.b", true))
+        .containsExactlyInAnyOrder("a/b/B.class", "a/b/B$Inner.class", "a/b/c/C.class");
+  }
+
+  @Test
+  public void list_siblingPrefixDirectory() throws IOException {
+    assertThat(list("a.bc", true)).containsExactly("a/bc/D.class");
+  }
+
+  @Test
+  public void list_unnamedPackage() throws IOException {
+    assertThat(list("", false)).containsExactly("Top.class");
+  }
+
+  @Test
+  public void list_everything() throws IOException {
+    assertThat(list("", true)).containsExactlyInAnyOrder(
+        "Top.class",
+        "a/A.class",
+        "a/b/B.class",
+        "a/b/B$Inner.class",
+        "a/b/c/C.class",
+        "a/bc/D.class",
+        "a/b0/E.class");
+  }
+
+  @Test
+  public void list_emptyDirectory() throws IOException {
+    assertThat(list("a.b.c.d", true)).isEmpty();
+    assertThat(list("z", false)).isEmpty();
+  }
+
+  @Test
+  public void list_filtersByLocationAndKind() throws IOException {
+    List<String> names = new ArrayList<>();
+    for (JavaFileObject file : fileManager.list(SOURCE_OUTPUT, "a.b", EnumSet.of(SOURCE), false)) {
+      names.add(file.getName());
+    }
+    assertThat(names).containsExactly("a/b/Source.java");
+    assertThat(fileManager.list(SOURCE_OUTPUT, "a.b", EnumSet.of(CLASS), false)).isEmpty();
+  }
+
+  private List<String> list(String packageName, boolean recurse) throws IOException {
+    List<String> names = new ArrayList<>();
+    for (JavaFileObject file : fileManager.list(CLASS_OUTPUT, packageName, EnumSet.of(CLASS), recurse)) {
+      names.add(file.getName());
+    }
+    return names;
+  }
+}
@@ -0,0 +1,101 @@
+package org.alicep.benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.function.IntUnaryOperator;
+
+import org.alicep.benchmark.InliningReport.Decisions;
+import org.junit.Test;
+
+public class InliningReportTests {
+
+  private static final String SITE = "com.example.Bench::sum @12";
+
+  @Test
+  public void decisions_failedStaticBindingIsMegamorphic() {
+    Decisions decisions = new Decisions();
+    decisions.add(1, SITE, "java.util.List::get", false, "no static binding");
+    decisions.add(1, SITE, "java.util.Map::get", false, "virtual call");
+    assertThat(decisions.megamorphic).containsExactly(
+        SITE + " -> java.util.List::get (no static binding)",
+        SITE + " -> java.util.Map::get (virtual call)");
+    assertThat(decisions.failed).isEmpty();
+    assertThat(decisions.bimorphic()).isEmpty();
+  }
+
+  @Test
+  public void decisions_otherFailuresAreFailedInlines() {
+    Decisions decisions = new Decisions();
+    decisions.add(1, SITE, "com.example.Bench::big", false, "hot method too big");
+    assertThat(decisions.failed).containsExactly(SITE + " -> com.example.Bench::big (hot method too big)");
+    assertThat(decisions.megamorphic).isEmpty();
+  }
+
+  @Test
+  public void decisions_twoCalleesInlinedAtOneSiteAreBimorphic() {
+    Decisions decisions = new Decisions();
+    decisions.add(1, SITE, "java.util.ArrayList::get", true, "inline (hot)");
+    decisions.add(1, SITE, "java.util.LinkedList::get", true, "inline (hot)");
+    decisions.add(1, SITE, "java.util.ArrayList::get", true, "inline (hot)");
+    assertThat(decisions.bimorphic())
+        .containsExactly(SITE + " -> java.util.ArrayList::get, java.util.LinkedList::get");
+    assertThat(decisions.megamorphic).isEmpty();
+    assertThat(decisions.failed).isEmpty();
+  }
+
+  @Test
+  public void decisions_calleesInlinedInSeparateCompilationsAreNotBimorphic() {
+    Decisions decisions = new Decisions();
+    decisions.add(1, SITE, "java.util.ArrayList::get", true, "inline (hot)");
+    decisions.add(2, SITE, "java.util.LinkedList::get", true, "inline (hot)");
+    assertThat(decisions.bimorphic()).isEmpty();
+  }
+
+  @Test
+  public void print_reportsBimorphicSiteFromRecordedEvents() throws InterruptedException {
+    InliningReport report = InliningReport.start();
+    assumeTrue("Flight Recorder not available", report != null);
+    try {
+      IntUnaryOperator[] operators = { new Increment(), new Decrement() };
+      long deadline = System.currentTimeMillis() + 2000;
+      long sum = 0;
+      while (System.currentTimeMillis() < deadline) {
+        sum += Looper.run(operators);
+      }
+      assertThat(sum).isNotZero();
+      report.stop();
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      report.print(InliningReportTests.class.getClassLoader(), new PrintStream(bytes, true));
+      assertThat(bytes.toString()).contains("bimorphic: " + Looper.class.getName() + "::run @");
+    } finally {
+      report.close();
+    }
+  }
+
+  static class Looper {
+    static long run(IntUnaryOperator[] operators) {
+      long sum = 0;
+      for (int i = 0; i < 10_000; i++) {
+        sum += operators[i & 1].applyAsInt(i);
+      }
+      return sum;
+    }
+  }
+
+  static class Increment implements IntUnaryOperator {
+    @Override
+    public int applyAsInt(int operand) {
+      return operand + 1;
+    }
+  }
+
+  static class Decrement implements IntUnaryOperator {
+    @Override
+    public int applyAsInt(int operand) {
+      return operand - 1;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package org.alicep.benchmark;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.alicep.benchmark.JvmArgsSweep.Result;
+import org.junit.Test;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class JvmArgsSweepTests {
+
+  @Test
+  public void run_forwardsConfigurationOverridesToChild() throws Exception {
+    BenchmarkRunner runner =
+        new BenchmarkRunner(SizedSumBenchmark.class, method -> true, ImmutableMap.of("sizes", "7"));
+    List<Failure> failures = new ArrayList<>();
+    RunNotifier notifier = new RunNotifier();
+    notifier.addListener(new RunListener() {
+      @Override
+      public void testFailure(Failure failure) {
+        failures.add(failure);
+      }
+    });
+    runner.run(notifier);
+
+    assertThat(failures).isEmpty();
+    List<SingleBenchmark> benchmarks = BenchmarkRunner.singleBenchmarks(runner).collect(toList());
+    assertThat(benchmarks).hasSize(1);
+    assertThat(benchmarks.get(0).getDescription().getMethodName()).isEqualTo("sum [7]");
+    assertThat(benchmarks.get(0).meanNanos()).isPositive();
+  }
+
+  @Test
+  public void differsSignificantlyFrom_gapBeyondCombinedError() {
+    // Combined error is hypot(3, 4) = 5
+    Result baseline = result(100, 3, true);
+    assertThat(result(105.1, 4, true).differsSignificantlyFrom(baseline)).isTrue();
+    assertThat(result(94.9, 4, true).differsSignificantlyFrom(baseline)).isTrue();
+    assertThat(result(104.9, 4, true).differsSignificantlyFrom(baseline)).isFalse();
+    assertThat(result(95.1, 4, true).differsSignificantlyFrom(baseline)).isFalse();
+  }
+
+  @Test
+  public void differsSignificantlyFrom_errorsWiderThanEitherAlone() {
+    // Further apart than either error alone, but within their combined error
+    Result baseline = result(100, 3, true);
+    assertThat(result(104.5, 4, true).differsSignificantlyFrom(baseline)).isFalse();
+  }
+
+  @Test
+  public void difference_reportsSignificance() {
+    Result baseline = result(100, 1, true);
+    assertThat(JvmArgsSweep.difference(result(110, 1, true), baseline)).startsWith("+10.0% time (significant)");
+    assertThat(JvmArgsSweep.difference(result(100.5, 1, true), baseline)).startsWith("+0.5% time (not significant)");
+  }
+
+  @Test
+  public void difference_untrustworthyWhenEitherDrifts() {
+    Result baseline = result(100, 1, true);
+    assertThat(JvmArgsSweep.difference(result(150, 1, false), baseline))
+        .startsWith("+50.0% time (untrustworthy: timings not stationary)");
+    assertThat(JvmArgsSweep.difference(baseline, result(150, 1, false)))
+        .startsWith("-33.3% time (untrustworthy: timings not stationary)");
+  }
+
+  private static Result result(double meanNanos, double errorNanos, boolean stationary) {
+    return new Result(meanNanos, errorNanos, -1, stationary, ImmutableList.of());
+  }
+}
@@ -0,0 +1,149 @@
+package org.alicep.benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.Map;
+import java.util.Properties;
+
+import org.alicep.benchmark.BenchmarkRunner.MinBenchmarkTime;
+import org.alicep.benchmark.BenchmarkRunner.MinSampleTime;
+import org.alicep.benchmark.BenchmarkRunner.MinSamples;
+import org.alicep.benchmark.BenchmarkRunner.TargetError;
+import org.junit.Test;
+import org.junit.runner.Description;
+
+import com.google.common.collect.ImmutableMap;
+
+public class MeasurementSettingsTests {
+
+  @TargetError(0.3)
+  @MinBenchmarkTime(millis = 123)
+  @MinSamples(7)
+  @MinSampleTime(millis = 11)
+  public void annotated() { }
+
+  private final Description description = description();
+
+  @Test
+  public void annotationsUsedByDefault() {
+    MeasurementSettings settings = settings(properties(), ImmutableMap.of(), properties());
+    assertThat(settings.targetError(description)).isEqualTo(0.3);
+    assertThat(settings.minBenchmarkMillis(description)).isEqualTo(123);
+    assertThat(settings.minSamples(description)).isEqualTo(7);
+    assertThat(settings.minSampleMillis(description)).isEqualTo(11);
+  }
+
+  @Test
+  public void systemPropertyBeatsEnvironment() {
+    MeasurementSettings settings = settings(
+        properties("benchmark.minSamples", "1"),
+        ImmutableMap.of("BENCHMARK_MIN_SAMPLES", "2"),
+        properties("benchmark.minSamples", "3"));
+    assertThat(settings.minSamples(description)).isEqualTo(1);
+  }
+
+  @Test
+  public void environmentBeatsFile() {
+    MeasurementSettings settings = settings(
+        properties(),
+        ImmutableMap.of("BENCHMARK_MIN_SAMPLES", "2"),
+        properties("benchmark.minSamples", "3"));
+    assertThat(settings.minSamples(description)).isEqualTo(2);
+  }
+
+  @Test
+  public void fileBeatsProfile() {
+    MeasurementSettings settings = settings(
+        properties(),
+        ImmutableMap.of(),
+        properties("benchmark.profile", "quick", "benchmark.minSamples", "4"));
+    assertThat(settings.minSamples(description)).isEqualTo(4);
+    assertThat(settings.targetError(description)).isEqualTo(0.05);
+  }
+
+  @Test
+  public void profileBeatsAnnotation() {
+    MeasurementSettings settings =
+        settings(properties("benchmark.profile", "precise"), ImmutableMap.of(), properties());
+    assertThat(settings.targetError(description)).isEqualTo(0.005);
+    assertThat(settings.minBenchmarkMillis(description)).isEqualTo(2000);
+    assertThat(settings.minSamples(description)).isEqualTo(20);
+    assertThat(settings.minSampleMillis(description)).isEqualTo(100);
+  }
+
+  @Test
+  public void profileSelectedByEnvironment() {
+    MeasurementSettings settings = settings(properties(), ImmutableMap.of("BENCHMARK_PROFILE", "quick"), properties());
+    assertThat(settings.minSamples(description)).isEqualTo(3);
+  }
+
+  @Test
+  public void fileProfileOverridesBuiltInProfileSetting() {
+    MeasurementSettings settings = settings(
+        properties("benchmark.profile", "quick"),
+        ImmutableMap.of(),
+        properties("benchmark.profile.quick.minSamples", "9"));
+    assertThat(settings.minSamples(description)).isEqualTo(9);
+    assertThat(settings.targetError(description)).isEqualTo(0.05);
+  }
+
+  @Test
+  public void fileDefinedProfile_fallsBackToAnnotationsForMissingSettings() {
+    MeasurementSettings settings = settings(
+        properties("benchmark.profile", "nightly"),
+        ImmutableMap.of(),
+        properties("benchmark.profile.nightly.targetError", "0.02"));
+    assertThat(settings.targetError(description)).isEqualTo(0.02);
+    assertThat(settings.minSamples(description)).isEqualTo(7);
+  }
+
+  @Test
+  public void unknownProfile_rejected() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> settings(properties("benchmark.profile", "nightly"), ImmutableMap.of(), properties()))
+        .withMessage("Unknown benchmark profile nightly; expected one of [quick, precise], "
+            + "or one defined in benchmark.properties");
+  }
+
+  @Test
+  public void invalidValue_namesSource() {
+    MeasurementSettings settings = settings(
+        properties(), ImmutableMap.of("BENCHMARK_MIN_SAMPLES", "lots"), properties());
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> settings.minSamples(description))
+        .withMessage("Invalid minSamples \"lots\" from environment variable BENCHMARK_MIN_SAMPLES");
+  }
+
+  @Test
+  public void nonPositiveTargetError_rejected() {
+    MeasurementSettings settings = settings(properties("benchmark.targetError", "0"), ImmutableMap.of(), properties());
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> settings.targetError(description))
+        .withMessage("Target error must be positive, not 0.0");
+  }
+
+  private static MeasurementSettings settings(
+      Properties systemProperties, Map<String, String> environment, Properties file) {
+    return new MeasurementSettings(systemProperties, environment, file);
+  }
+
+  private static Properties properties(String... keysAndValues) {
+    Properties properties = new Properties();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      properties.setProperty(keysAndValues[i], keysAndValues[i + 1]);
+    }
+    return properties;
+  }
+
+  private static Description description() {
+    try {
+      return Description.createTestDescription(
+          MeasurementSettingsTests.class,
+          "annotated",
+          MeasurementSettingsTests.class.getMethod("annotated").getAnnotations());
+    } catch (NoSuchMethodException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
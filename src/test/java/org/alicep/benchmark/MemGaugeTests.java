@@ -6,6 +6,7 @@ import static org.alicep.benchmark.MemGauge.objectSize;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
 import java.lang.management.MemoryUsage;
 import java.util.Arrays;
@@ -91,6 +92,16 @@ public class MemGaugeTests {
     assertEquals(bytes(EdenMonitor.SAMPLE_ERROR_BYTES), objectSize(() -> new MemoryUsage(0, 0, 0, 0)));
   }
 
+  @Test
+  public void threadAllocationMonitor_sampleExcludesItsOwnAllocations() {
+    assumeTrue("Per-thread counters not precise", ThreadAllocationMonitor.isPrecise());
+    try (ThreadAllocationMonitor monitor = new ThreadAllocationMonitor()) {
+      for (int i = 0; i < 100; ++i) {
+        assertEquals(0, monitor.sample());
+      }
+    }
+  }
+
   @Test
   public void memoryConsumption_doNothing() throws InterruptedException {
     assertEquals(bytes(0), memoryConsumption(() -> null));
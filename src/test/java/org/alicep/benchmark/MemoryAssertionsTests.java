@@ -1,12 +1,21 @@
 package org.alicep.benchmark;
 
 import static org.alicep.benchmark.Bytes.bytes;
+import static org.alicep.benchmark.Bytes.kilobytes;
 import static org.alicep.benchmark.Bytes.megabytes;
 import static org.alicep.benchmark.MemoryAssertions.assertThatRunning;
+import static org.alicep.benchmark.MemoryAssertions.assertThatRunningConcurrently;
+import static org.alicep.benchmark.MemoryAssertions.assertThatRunningOnCallingThread;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.junit.Assume.assumeTrue;
 
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
@@ -14,13 +23,36 @@ import org.junit.Test;
 public class MemoryAssertionsTests {
 
   @Test
-  public void typicallyRuns31Times() {
+  public void typicallyRunsOncePlusFiveSamples() {
     AtomicInteger runs = new AtomicInteger(0);
     assertThatRunning(() -> {
       runs.incrementAndGet();
       return null;
     }).makesNoStackAllocations();
-    assertThat(runs).hasValue(31);
+    assertThat(runs).hasValue(1 + 5 * AllocationMonitor.repeatsPerSampleForAllThreads());
+  }
+
+  @Test
+  public void failuresTypicallyRunOncePlusFortySamples() {
+    AtomicInteger runs = new AtomicInteger(0);
+    assertThatExceptionOfType(AssertionError.class).isThrownBy(() -> assertThatRunning(() -> {
+      runs.incrementAndGet();
+      return new long[3];
+    }).makesNoStackAllocations());
+    assertThat(runs).hasValue(1 + 40 * AllocationMonitor.repeatsPerSampleForAllThreads());
+  }
+
+  @Test
+  public void withFalseFailureRate_rejectsInvalidRates() {
+    assertThatExceptionOfType(IllegalArgumentException.class)
+        .isThrownBy(() -> assertThatRunning(() -> null).withFalseFailureRate(0.5));
+  }
+
+  @Test
+  public void withFalseFailureRate_stillFailsIncorrectAssertions() {
+    assertThatExceptionOfType(AssertionError.class)
+        .isThrownBy(() -> assertThatRunning(() -> new long[3]).withFalseFailureRate(1e-9).allocates(bytes(48)))
+        .withMessageContaining("Consider using .allocates(Bytes.bytes(40))");
   }
 
   @Test
@@ -199,6 +231,146 @@ public class MemoryAssertionsTests {
     assertThatRunning(() -> new byte[5]).returnsObjectConsuming(bytes(24));
   }
 
+  @Test
+  public void countsAllocationsOnOtherThreads() {
+    assumeTrue("Eden cannot be watched", EdenMonitor.isAvailable());
+    assertThatRunning(() -> {
+      Thread thread = new Thread(() -> sink = allocateByteArrays(2_000_000));
+      thread.start();
+      thread.join();
+      return null;
+    }).allocatesBetween(megabytes(48), megabytes(50));
+  }
+
+  @Test
+  public void countsAllocationsOnPooledThreadsToTheByte() throws InterruptedException {
+    assumeTrue("Per-thread counters not precise", ThreadAllocationMonitor.isPrecise());
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    try {
+      pool.submit(() -> null).get();
+      assertThatRunning(() -> pool.submit(() -> sink = new long[1000]).get())
+          .allocatesBetween(bytes(16 + 8 * 1000), kilobytes(9));
+    } catch (ExecutionException e) {
+      throw new AssertionError(e);
+    } finally {
+      pool.shutdown();
+      pool.awaitTermination(10, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void typicallyRuns6TimesWithPerThreadCounters() {
+    assumeTrue("Per-thread counters not precise", ThreadAllocationMonitor.isPrecise());
+    AtomicInteger runs = new AtomicInteger(0);
+    assertThatRunning(() -> {
+      runs.incrementAndGet();
+      return null;
+    }).makesNoStackAllocations();
+    assertThat(runs).hasValue(6);
+  }
+
+  @Test
+  public void onCallingThread_typicallyRuns6Times() {
+    assumeTrue("Per-thread counters not precise", ThreadAllocationMonitor.isPrecise());
+    AtomicInteger runs = new AtomicInteger(0);
+    assertThatRunningOnCallingThread(() -> {
+      runs.incrementAndGet();
+      return null;
+    }).makesNoStackAllocations();
+    assertThat(runs).hasValue(6);
+  }
+
+  @Test
+  public void onCallingThread_ignoresAllocationsOnOtherThreads() throws InterruptedException {
+    assumeTrue("Per-thread counters not precise", ThreadAllocationMonitor.isPrecise());
+    AtomicBoolean stop = new AtomicBoolean(false);
+    Thread background = new Thread(() -> {
+      while (!stop.get()) {
+        sink = allocateByteArrays(1000);
+      }
+    });
+    background.start();
+    try {
+      assertThatRunningOnCallingThread(() -> new long[3]).allocates(bytes(40));
+    } finally {
+      stop.set(true);
+      background.join();
+    }
+  }
+
+  @Test
+  public void concurrently_typicallyRuns6Times() {
+    AtomicInteger runs = new AtomicInteger(0);
+    assertThatRunningConcurrently(Runnable::run, executor -> {
+      runs.incrementAndGet();
+      return null;
+    }).makesNoStackAllocations();
+    assertThat(runs).hasValue(1 + 5 * AllocationMonitor.repeatsPerSample());
+  }
+
+  @Test
+  public void concurrently_ignoresBackgroundAllocations() throws InterruptedException {
+    AtomicBoolean stop = new AtomicBoolean(false);
+    Thread background = new Thread(() -> {
+      while (!stop.get()) {
+        sink = allocateByteArrays(1000);
+      }
+    });
+    background.start();
+    try {
+      assertThatRunningConcurrently(Runnable::run, executor -> new long[3]).allocates(bytes(40));
+    } finally {
+      stop.set(true);
+      background.join();
+    }
+  }
+
+  @Test
+  public void concurrently_countsAllocationsOnExecutorThreads() throws InterruptedException {
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      assertThatRunningConcurrently(pool, executor -> {
+        executor.execute(() -> sink = allocateByteArrays(1_000_000));
+        executor.execute(() -> sink = allocateByteArrays(1_000_000));
+        return null;
+      }).allocates(megabytes(48));
+    } finally {
+      pool.shutdown();
+      pool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+  }
+
+  @Test
+  public void concurrently_countsNestedSubmissions() {
+    assertThatRunningConcurrently(Runnable::run, executor -> {
+      // The outer lambda captures executor, so costs 16B
+      executor.execute(() -> executor.execute(() -> sink = new long[3]));
+      return null;
+    }).allocates(bytes(16 + 40));
+  }
+
+  @Test
+  public void concurrently_failsWhenExecutorThreadsAllocate() throws InterruptedException {
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    try {
+      assertThatExceptionOfType(AssertionError.class)
+          .isThrownBy(() -> assertThatRunningConcurrently(pool, executor -> {
+            executor.execute(() -> sink = allocateByteArrays(1_000_000));
+            return null;
+          }).makesNoStackAllocations())
+          .withMessageMatching("expected no stack allocations but ([89]\\d|100)% of runs allocated 24.0MB\\n.*");
+    } finally {
+      pool.shutdown();
+      pool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+  }
+
+  /**
+   * Used to prevent HotSpot optimizing away unused objects. Volatile just to be certain.
+   */
+  @SuppressWarnings("unused")
+  private static volatile Object sink;
+
   private static Object allocateByteArrays(int allocations) {
     if (allocations == 0) {
       return null;
@@ -215,7 +387,7 @@ public class MemoryAssertionsTests {
    * Simulates a horribly flaky test that allocates 0-40B.
    */
   private static ThrowingRunnable allocateUpTo40Bytes() {
-    int repeatFor = EdenMonitor.SAMPLE_ERROR_BYTES / Long.BYTES;
+    int repeatFor = AllocationMonitor.repeatsPerSampleForAllThreads();
     AtomicInteger nextSize = new AtomicInteger(repeatFor - 1);
     return () -> {
       int size = (nextSize.getAndIncrement() / repeatFor) % 4;
@@ -230,7 +402,7 @@ public class MemoryAssertionsTests {
    * Simulates a horribly flaky test that allocates 16B-40B.
    */
   private static ThrowingRunnable allocate16To40Bytes() {
-    int repeatFor = EdenMonitor.SAMPLE_ERROR_BYTES / Long.BYTES;
+    int repeatFor = AllocationMonitor.repeatsPerSampleForAllThreads();
     AtomicInteger nextSize = new AtomicInteger(repeatFor - 1);
     return () -> {
       int size = (nextSize.getAndIncrement() / repeatFor) % 4;
@@ -0,0 +1,39 @@
+package org.alicep.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.alicep.benchmark.BenchmarkRunner.Benchmark;
+import org.alicep.benchmark.BenchmarkRunner.Configuration;
+import org.alicep.benchmark.BenchmarkRunner.JvmArgs;
+import org.alicep.benchmark.BenchmarkRunner.MinBenchmarkTime;
+import org.alicep.benchmark.BenchmarkRunner.MinSampleTime;
+import org.alicep.benchmark.BenchmarkRunner.TargetError;
+
+/**
+ * A quick benchmark, run in a child JVM, for {@link JvmArgsSweepTests}.
+ */
+@JvmArgs({ "" })
+@MinBenchmarkTime(millis = 10)
+@MinSampleTime(millis = 2)
+@TargetError(0.5)
+public class SizedSumBenchmark {
+
+  @Configuration
+  public static final List<Integer> sizes = Arrays.asList(1);
+
+  private final int[] values;
+
+  public SizedSumBenchmark(int size) {
+    values = new int[size];
+  }
+
+  @Benchmark
+  public int sum() {
+    int sum = 0;
+    for (int value : values) {
+      sum += value;
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,67 @@
+package org.alicep.benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.nio.file.Paths;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.Description;
+
+public class StackSamplerTests {
+
+  private static final String HOT_LOOP = "looper.HotLoop";
+
+  @After
+  public void clearProperty() {
+    System.clearProperty(StackSampler.PROPERTY);
+  }
+
+  @Test
+  public void forBenchmark_disabledByDefault() {
+    assertThat(StackSampler.forBenchmark(description())).isNull();
+  }
+
+  @Test
+  public void record_collapsesStacksRootFirstFromHotLoop() {
+    StackSampler sampler = sampler();
+    sampler.record(stack("Bench.inner", "Bench.sum", HOT_LOOP + ".applyAsLong", "Runner.run"), HOT_LOOP);
+    sampler.record(stack("Bench.inner", "Bench.sum", HOT_LOOP + ".applyAsLong", "Runner.run"), HOT_LOOP);
+    sampler.record(stack("Bench.sum", HOT_LOOP + ".applyAsLong", "Runner.run"), HOT_LOOP);
+    assertThat(sampler.stacks()).containsOnly(
+        entry(HOT_LOOP + ".applyAsLong;Bench.sum;Bench.inner", 2L),
+        entry(HOT_LOOP + ".applyAsLong;Bench.sum", 1L));
+    assertThat(sampler.missed()).isZero();
+  }
+
+  @Test
+  public void record_countsStacksOutsideHotLoopAsMissed() {
+    StackSampler sampler = sampler();
+    sampler.record(stack("Runner.setUp", "Runner.run"), HOT_LOOP);
+    sampler.record(new StackTraceElement[0], HOT_LOOP);
+    assertThat(sampler.stacks()).isEmpty();
+    assertThat(sampler.missed()).isEqualTo(2);
+  }
+
+  private static StackSampler sampler() {
+    System.setProperty(StackSampler.PROPERTY, Paths.get("build", "test-stacks").toString());
+    return StackSampler.forBenchmark(description());
+  }
+
+  private static Description description() {
+    return Description.createTestDescription("com.example.Bench", "sum");
+  }
+
+  /**
+   * Returns a stack trace of the given "Class.method" frames, innermost first.
+   */
+  private static StackTraceElement[] stack(String... frames) {
+    StackTraceElement[] stack = new StackTraceElement[frames.length];
+    for (int i = 0; i < frames.length; i++) {
+      int dot = frames[i].lastIndexOf('.');
+      stack[i] = new StackTraceElement(frames[i].substring(0, dot), frames[i].substring(dot + 1), null, -1);
+    }
+    return stack;
+  }
+}
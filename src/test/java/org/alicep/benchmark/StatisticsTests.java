@@ -0,0 +1,183 @@
+package org.alicep.benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StatisticsTests {
+
+  @Test
+  public void mean_firstNValues() {
+    assertThat(Statistics.mean(new double[] { 3, 1, 2, 10, 99 }, 4)).isEqualTo(4.0);
+  }
+
+  @Test
+  public void median_oddAndEvenCounts() {
+    double[] values = { 3, 1, 2, 10, 99 };
+    assertThat(Statistics.median(values, 3)).isEqualTo(2.0);
+    assertThat(Statistics.median(values, 4)).isEqualTo(2.5);
+  }
+
+  @Test
+  public void medianOfMeans_ignoresOneDisruptedGroup() {
+    double[] values = normal(new Random(1), 50, 100, 1);
+    for (int i = 10; i < 20; i++) {
+      values[i] = 1000;
+    }
+    assertThat(Statistics.mean(values, 50)).isGreaterThan(250);
+    assertThat(Statistics.medianOfMeans(values, 50)).isCloseTo(100, within(1.0));
+  }
+
+  @Test
+  public void isApproximatelyNormal_normalSample() {
+    assertThat(Statistics.isApproximatelyNormal(normal(new Random(2), 200, 100, 5), 200)).isTrue();
+  }
+
+  @Test
+  public void isApproximatelyNormal_bimodalMixture() {
+    assertThat(Statistics.isApproximatelyNormal(mixture(new Random(3), 200, 0.5), 200)).isFalse();
+  }
+
+  @Test
+  public void isApproximatelyNormal_skewedSample() {
+    Random random = new Random(4);
+    double[] values = new double[200];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = -Math.log(1 - random.nextDouble());
+    }
+    assertThat(Statistics.isApproximatelyNormal(values, 200)).isFalse();
+  }
+
+  @Test
+  public void modes_bimodalMixture() {
+    Statistics.Modes modes = Statistics.modes(mixture(new Random(5), 200, 0.7), 200);
+    assertThat(modes).isNotNull();
+    assertThat(modes.lowerMean).isCloseTo(100, within(2.0));
+    assertThat(modes.upperMean).isCloseTo(200, within(2.0));
+    assertThat(modes.lowerFraction).isCloseTo(0.7, within(0.1));
+    assertThat(modes.upperFraction).isCloseTo(0.3, within(0.1));
+  }
+
+  @Test
+  public void modes_normalSample() {
+    assertThat(Statistics.modes(normal(new Random(6), 200, 100, 5), 200)).isNull();
+  }
+
+  @Test
+  public void modes_largeSample() {
+    // Enough samples to overflow an int product of sample counts
+    Statistics.Modes modes = Statistics.modes(mixture(new Random(14), 100_000, 0.5), 100_000);
+    assertThat(modes).isNotNull();
+    assertThat(modes.lowerMean).isCloseTo(100, within(1.0));
+    assertThat(modes.upperMean).isCloseTo(200, within(1.0));
+    assertThat(Statistics.modes(normal(new Random(15), 100_000, 100, 5), 100_000)).isNull();
+  }
+
+  @Test
+  public void bootstrap_coversKnownMean() {
+    double[] values = normal(new Random(7), 100, 50, 5);
+    Statistics.Interval interval =
+        Statistics.bootstrap(values, 100, Statistics::mean, Statistics.CONFIDENCE_99_PERCENT);
+    assertThat(interval.estimate).isEqualTo(Statistics.mean(values, 100));
+    assertThat(interval.lower).isLessThan(50);
+    assertThat(interval.upper).isGreaterThan(50);
+    // The standard error is 0.5, so a 99% interval is about 2.6 standard errors either side
+    assertThat(interval.halfWidth()).isBetween(0.8, 2.0);
+  }
+
+  @Test
+  public void bootstrap_usuallyCoversKnownMean() {
+    Random random = new Random(8);
+    int covered = 0;
+    for (int trial = 0; trial < 100; trial++) {
+      Statistics.Interval interval = Statistics.bootstrap(
+          normal(random, 100, 50, 5), 100, Statistics::mean, Statistics.CONFIDENCE_99_PERCENT);
+      if (interval.lower <= 50 && 50 <= interval.upper) {
+        covered++;
+      }
+    }
+    assertThat(covered).isGreaterThanOrEqualTo(95);
+  }
+
+  @Test
+  public void bootstrapMedianOfMeans_containsEstimateAfterSlowStretch() {
+    Random random = new Random(12);
+    double[] values = contaminated(random, 200, 10, 600);
+    Statistics.Interval interval = Statistics.bootstrapMedianOfMeans(values, 200, Statistics.CONFIDENCE_99_PERCENT);
+    assertThat(interval.estimate).isEqualTo(Statistics.medianOfMeans(values, 200));
+    assertThat(interval.estimate).isBetween(interval.lower, interval.upper);
+  }
+
+  @Test
+  public void bootstrapMedianOfMeans_ignoresLongOutlierBurst() {
+    Random random = new Random(13);
+    double[] values = contaminated(random, 50, 10, 2000);
+    Statistics.Interval interval = Statistics.bootstrapMedianOfMeans(values, 50, Statistics.CONFIDENCE_99_PERCENT);
+    assertThat(interval.estimate).isBetween(interval.lower, interval.upper);
+    assertThat(interval.lower).isLessThan(100);
+    assertThat(interval.upper).isBetween(100.0, 105.0);
+  }
+
+  @Test
+  public void bootstrap_isRepeatable() {
+    double[] values = normal(new Random(9), 30, 10, 2);
+    Statistics.Interval first = Statistics.bootstrap(values, 30, Statistics::median, 0.9);
+    Statistics.Interval second = Statistics.bootstrap(values, 30, Statistics::median, 0.9);
+    assertThat(second.lower).isEqualTo(first.lower);
+    assertThat(second.upper).isEqualTo(first.upper);
+  }
+
+  @Test
+  public void changePoints_findsStep() {
+    double[] values = normal(new Random(10), 100, 100, 2);
+    for (int i = 60; i < 100; i++) {
+      values[i] += 50;
+    }
+    assertThat(Statistics.changePoints(values, 100, 0.05)).containsExactly(60);
+  }
+
+  @Test
+  public void changePoints_flatNoisySeries() {
+    assertThat(Statistics.changePoints(normal(new Random(11), 100, 100, 10), 100, 0.05)).isEmpty();
+  }
+
+  @Test
+  public void changePoints_tooShortToSplit() {
+    double[] values = { 1, 1, 1, 1, 1, 9, 9, 9, 9 };
+    assertThat(Statistics.changePoints(values, values.length, 0.05)).isEmpty();
+  }
+
+  private static double[] normal(Random random, int n, double mean, double standardDeviation) {
+    double[] values = new double[n];
+    for (int i = 0; i < n; i++) {
+      values[i] = mean + standardDeviation * random.nextGaussian();
+    }
+    return values;
+  }
+
+  /**
+   * Returns values near 100, with a disrupted stretch of {@code slow} consecutive values near {@code slowValue}.
+   */
+  private static double[] contaminated(Random random, int n, int slow, double slowValue) {
+    double[] values = normal(random, n, 100, 2);
+    int start = random.nextInt(n - slow);
+    for (int i = start; i < start + slow; i++) {
+      values[i] = slowValue + 10 * random.nextGaussian();
+    }
+    return values;
+  }
+
+  /**
+   * Returns values near 100 with probability {@code lowerFraction}, otherwise near 200, in random order.
+   */
+  private static double[] mixture(Random random, int n, double lowerFraction) {
+    double[] values = new double[n];
+    for (int i = 0; i < n; i++) {
+      values[i] = ((random.nextDouble() < lowerFraction) ? 100 : 200) + 3 * random.nextGaussian();
+    }
+    return values;
+  }
+}